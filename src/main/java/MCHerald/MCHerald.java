@@ -1,35 +1,53 @@
 package MCHerald;
 
+import MCHerald.alert.AlertRule;
+import MCHerald.alert.AlertRules;
+import MCHerald.alert.NotificationPipeline;
+import MCHerald.alert.PresenceBus;
+import MCHerald.alert.PresenceNotifier;
+import MCHerald.alert.WebhookSink;
 import MCHerald.gui.AddServer;
 import MCHerald.gui.ServerTable;
 import MCHerald.gui.SystemTrayMenu;
+import MCHerald.ping.ConnectGovernor;
+import MCHerald.ping.HostResolver;
 import MCHerald.ping.PingClock;
+import MCHerald.ping.PingCoalescer;
+import MCHerald.ping.PingEngine;
+import MCHerald.player.PlayerRegistry;
+import MCHerald.player.PresenceIndex;
 import MCHerald.util.*;
 
 import javax.swing.*;
 import javax.swing.event.HyperlinkEvent;
 import java.awt.*;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.util.Timer;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.prefs.Preferences;
 
 public class MCHerald implements Shuttable {
 
     private final PingClock pingClock;
-    private final LinkedBlockingQueue<Notification> notificationQueue;
+    private final PingEngine pingEngine;
+    private final PingCoalescer pingCoalescer;
+    private final HostResolver hostResolver;
+    private final PresenceIndex presenceIndex;
+    private final PresenceBus presenceBus;
+    private final NotificationPipeline notificationPipeline;
+    private final WebhookSink webhookSink;
     private final SystemTrayMenu tray;
     private final ServerTable serverTable;
     private final AddServer addServer;
     private final JFrame dialogPopupFrame;
     private LinkedHashMap<String, ServerInfo> serverList; // <uuid, serverObj>
+    private Set<String> watchedPlayers; // lower case names / UUIDs (see PlayerRegistry.toKey), alerted about on any server
+    private volatile AlertRules alertRules = AlertRules.EMPTY; // recompiled on every change, read by every server's update
     private Preferences pref;
 
     private boolean isNotifying = true, isRunning = true; // TODO: Load "isNotifying" in from preferences
@@ -37,7 +55,7 @@ public class MCHerald implements Shuttable {
 
     private long UUID;
 
-    private MCHerald() throws FileNotFoundException {
+    private MCHerald() throws IOException {
         UIManager.put("EditorPane.inactiveBackground", UIManager.get("OptionPane.background"));
         this.loadConfig();
 
@@ -45,36 +63,35 @@ public class MCHerald implements Shuttable {
         this.appIcon = Constants.createImage(Language.R.ICON_APP, "App Icon");
         this.appIconLarge = Constants.createImage(Language.R.ICON_APP_LARGE, "App Icon Large");
 
-        // Load up message handlers.
-        this.notificationQueue = new LinkedBlockingQueue<>();
-        new Thread(){
-            @Override
-            public void run() {
-                while (isRunning){
-                    try {
-                        Notification notification = notificationQueue.take();
-                        tray.sendNotification(notification.caption, notification.text, notification.messageType);
-                        TimeUnit.SECONDS.sleep(2);  // Give time for the this notification, before popping the next up
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-        }.start();
-
         // Load GUIv
-        this.pingClock = new PingClock(this);
+        this.pingEngine = new PingEngine(new ConnectGovernor(Constants.PING_CONNECTS_PER_SECOND, Constants.PING_CONNECT_BURST,
+                Constants.PING_MAX_IN_FLIGHT, Constants.PING_MAX_PER_SUBNET));
+        this.pingCoalescer = new PingCoalescer(pingEngine);
+        this.hostResolver = new HostResolver(null, Constants.MC_PORT);
+        this.pingClock = new PingClock(this, Constants.PING_THREADS, Constants.PING_QUEUE_CAPACITY);
+        this.presenceIndex = new PresenceIndex();
+        this.presenceIndex.setListener(this::onPlayerOnline);
+        this.presenceBus = new PresenceBus(Constants.PRESENCE_BUS_CAPACITY);
         this.dialogPopupFrame = new JFrame();
         this.tray = new SystemTrayMenu(this, serverList);
+        // Load up message handlers.
+        this.notificationPipeline = new NotificationPipeline(Constants.NOTIFICATION_QUEUE_CAPACITY,
+                notification -> tray.sendNotification(notification.caption, notification.text, notification.messageType));
+        this.webhookSink = new WebhookSink(Constants.WEBHOOK_SPOOL, Constants.WEBHOOK_MAX_CONCURRENT, Constants.WEBHOOK_QUEUE_CAPACITY);
+        for(String url : pref.get(Language.WEBHOOKS_KEY, "").split("\n"))
+            if(!url.trim().isEmpty()) this.addWebhook(url);
+        // a server's joins and count changes reach the tray and the webhooks off the bus, each at its own pace
+        this.presenceBus.subscribe("Tray Notifier", new PresenceNotifier(this, notificationPipeline::offer));
+        this.presenceBus.subscribe("Webhook Notifier", new PresenceNotifier(this, webhookSink::offer));
         this.serverTable = new ServerTable(this);
         this.addServer = new AddServer(this, serverTable);
+        FaviconCache.INSTANCE.setOnDecoded(this::updateServerTable);
 
-        // TEMP: Starts servers with preset MC servers, while load/save is disabled to prevent debugging overload.
-        this.addServer(new ServerInfo(this, "72.69.253.223", "Minecraft Server", true, 1));
-
-        for(int i = 0; i < 15; i++)
-            this.addServer(new ServerInfo(this, "xxx.xxx.xxx.xxx", "Server #"+(i+1), true, 2));
-        //this.addServer(new ServerInfo(this, "play.mineville.org", "MineVille", true, 2));
+        // Servers loaded from the config get the herald they ping through, then their schedule.
+        for(ServerInfo server : serverList.values()){
+            server.attach(this);
+            this.pingClock.add(server);
+        }
     }
 
     /* Public Methods */
@@ -97,6 +114,7 @@ public class MCHerald implements Shuttable {
                 Language.DELETE_SERVER.CANCEL
         ) == JOptionPane.OK_OPTION) {
             this.serverList.remove(server.getUUID());
+            this.presenceIndex.remove(server.getUUID());
             this.tray.removeWatched(server.getUUID());
             this.serverTable.update();
             this.pingClock.remove(server);
@@ -139,27 +157,7 @@ public class MCHerald implements Shuttable {
     public void refreshServerTable(){
         if(!this.serverTable.isVisible()) return;
         // re-pings all valid servers, then calls update.
-        Thread t = new Thread(() -> {
-            ExecutorService pool = Executors.newFixedThreadPool(10);
-
-            for(ServerInfo server : serverList.values()){
-                pool.execute(() -> {
-                    System.out.println("Calling refresh on server: "+server);
-                    if(server.getState()) server.refresh();
-                    System.out.println("Finished refresh on server: "+server);
-                });
-            }
-
-            try {
-                pool.awaitTermination(Constants.SERVER_TIMEOUT, TimeUnit.MILLISECONDS);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-
-            this.updateServerTable();
-        });
-        t.setDaemon(true);
-        t.start();
+        this.pingClock.refresh(serverList.values()).thenRun(this::updateServerTable);
     }
 
     public void updateServerTable(){
@@ -169,7 +167,56 @@ public class MCHerald implements Shuttable {
     }
 
     public void sendNotification(Notification notification){
-        if(isNotifying) notificationQueue.offer(notification);
+        if(!isNotifying) return;
+        notificationPipeline.offer(notification);
+        webhookSink.offer(notification);
+    }
+
+    /**
+     * Starts POSTing every notification to the URL, along with showing it.
+     * @return False if it isn't an http(s) URL
+     */
+    public boolean addWebhook(String url){
+        try {
+            webhookSink.addEndpoint(url.trim());
+            tray.addWebhook(url.trim());
+            return true;
+        } catch (MalformedURLException e) {
+            System.out.println(e.getMessage());
+            return false;
+        }
+    }
+
+    public void removeWebhook(String url){
+        webhookSink.removeEndpoint(url.trim());
+        tray.removeWebhook(url.trim());
+    }
+
+    /**
+     * Adds a user-defined alert rule (see {@link AlertRule}), evaluated on every server's update from now on.
+     * @return False if the text isn't a rule
+     */
+    public synchronized boolean addAlertRule(String text){
+        AlertRule rule;
+        try {
+            rule = AlertRule.parse(text);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return false;
+        }
+        List<AlertRule> rules = new ArrayList<>(alertRules.getRules());
+        if(rules.stream().anyMatch(existing -> existing.getText().equals(rule.getText()))) return true;
+        rules.add(rule);
+        alertRules = new AlertRules(rules);
+        tray.addAlertRule(rule.getText());
+        return true;
+    }
+
+    public synchronized void removeAlertRule(String text){
+        List<AlertRule> rules = new ArrayList<>(alertRules.getRules());
+        if(!rules.removeIf(rule -> rule.getText().equals(text.trim()))) return;
+        alertRules = new AlertRules(rules);
+        tray.removeAlertRule(text.trim());
     }
 
     public void openAbout(){
@@ -209,6 +256,20 @@ public class MCHerald implements Shuttable {
         serverList.get(uuid).toggleState();
     }
 
+    /**
+     * Alerts whenever the player shows up on any watched server, whether or not that server notifies
+     * @param player The player's name (any case) or UUID
+     */
+    public void watchPlayer(String player){
+        player = PlayerRegistry.toKey(player);
+        if(player.isEmpty() || !watchedPlayers.add(player)) return;
+        tray.addWatchedPlayer(player);
+    }
+
+    public void unwatchPlayer(String player){
+        if(watchedPlayers.remove(player)) tray.removeWatchedPlayer(player);
+    }
+
     /* Getters & Setters */
 
     public Image getAppIcon(){
@@ -219,6 +280,34 @@ public class MCHerald implements Shuttable {
         return this.appIconLarge;
     }
 
+    public PingEngine getPingEngine(){
+        return this.pingEngine;
+    }
+
+    public PingCoalescer getPingCoalescer(){
+        return this.pingCoalescer;
+    }
+
+    public PresenceIndex getPresenceIndex(){
+        return this.presenceIndex;
+    }
+
+    public AlertRules getAlertRules(){
+        return this.alertRules;
+    }
+
+    public PresenceBus getPresenceBus(){
+        return this.presenceBus;
+    }
+
+    public Set<String> getWatchedPlayers(){
+        return Collections.unmodifiableSet(this.watchedPlayers);
+    }
+
+    public HostResolver getHostResolver(){
+        return this.hostResolver;
+    }
+
     public boolean getNotifying(){return this.isNotifying;}
 
     public void setNotifying(boolean isNotifying){
@@ -236,6 +325,24 @@ public class MCHerald implements Shuttable {
 
     /* Private Methods */
 
+    // Called by the player index, from a ping thread, when a player went from no server to one.
+    private void onPlayerOnline(int playerId, String serverUuid){
+        if(watchedPlayers.isEmpty()) return;
+        String name = PlayerRegistry.INSTANCE.getName(playerId);
+        java.util.UUID uuid = PlayerRegistry.INSTANCE.getUuid(playerId);
+        if(name == null) return; // dropped by the registry meanwhile
+        if(!watchedPlayers.contains(name.toLowerCase(Locale.ROOT)) && (uuid == null || !watchedPlayers.contains(uuid.toString()))) return;
+
+        ServerInfo server = serverList.get(serverUuid);
+        sendNotification(new Notification(
+                "player:" + playerId,
+                Language.WATCH_PLAYER.NOTIFICATION_TITLE,
+                String.format(Language.WATCH_PLAYER.ONLINE_FORMAT, name, (server == null) ? serverUuid : server.getName()),
+                TrayIcon.MessageType.INFO,
+                1
+        ));
+    }
+
     @SuppressWarnings("unchecked")
     private void loadConfig() {
         pref = Preferences.userNodeForPackage(MCHerald.class);
@@ -250,12 +357,35 @@ public class MCHerald implements Shuttable {
         }
 
         if (serverList == null) this.serverList = new LinkedHashMap<>();
-        this.UUID = 0; // TODO: Read UUID from preferences
+        this.watchedPlayers = ConcurrentHashMap.newKeySet();
+        for(String player : pref.get(Language.WATCHED_PLAYERS_KEY, "").split("\n"))
+            if(!player.trim().isEmpty()) watchedPlayers.add(PlayerRegistry.toKey(player));
+        List<AlertRule> rules = new ArrayList<>();
+        for(String rule : pref.get(Language.ALERT_RULES_KEY, "").split("\n")){
+            try {
+                if(!rule.trim().isEmpty()) rules.add(AlertRule.parse(rule));
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+        this.alertRules = new AlertRules(rules);
+        // UUIDs are handed out in sequence, so carry on after the highest loaded one
+        this.UUID = 0;
+        for(String uuid : serverList.keySet()){
+            try {
+                this.UUID = Math.max(this.UUID, Long.parseLong(uuid) + 1);
+            } catch (NumberFormatException ignore) {}
+        }
     }
 
     private void saveConfig() {
         try {
             pref.putByteArray(Language.SERVER_MAP_KEY, Constants.serialize(serverList));
+            pref.put(Language.WATCHED_PLAYERS_KEY, String.join("\n", watchedPlayers));
+            pref.put(Language.WEBHOOKS_KEY, String.join("\n", webhookSink.getUrls()));
+            StringJoiner rules = new StringJoiner("\n");
+            for(AlertRule rule : alertRules.getRules()) rules.add(rule.getText());
+            pref.put(Language.ALERT_RULES_KEY, rules.toString());
             pref.exportNode(new FileOutputStream(Language.R.CONFIG_NAME));
         } catch (Exception e) {
             e.printStackTrace();
@@ -266,9 +396,14 @@ public class MCHerald implements Shuttable {
 
     @Override
     public void shutdown(){
-        //saveConfig();
+        saveConfig();
         isRunning = false;
         pingClock.shutdown();
+        pingEngine.shutdown();
+        notificationPipeline.shutdown();
+        webhookSink.shutdown();
+        presenceBus.shutdown();
+        hostResolver.shutdown();
         tray.shutdown();
         addServer.shutdown();
         serverTable.shutdown();
@@ -289,7 +424,7 @@ public class MCHerald implements Shuttable {
         }, 7_000);
     }
 
-    public static void main(String[] args) throws FileNotFoundException {
+    public static void main(String[] args) throws IOException {
         new MCHerald();
     }
 }
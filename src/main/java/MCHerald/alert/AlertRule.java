@@ -0,0 +1,123 @@
+package MCHerald.alert;
+
+import MCHerald.player.PlayerRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A user-defined alert, parsed once from its text, such as:
+ * <pre>
+ *     online &gt;= 50
+ *     player Notch joins
+ *     down for &gt; 5 min
+ *     version changes
+ *     motd matches (?i)maintenance
+ * </pre>
+ * Rules fire on the update that makes them true, not on every update they hold for; see {@link AlertRules}.
+ */
+public class AlertRule {
+
+    public enum Kind {ONLINE, PLAYER_JOINS, DOWN_FOR, VERSION_CHANGES, MOTD_MATCHES}
+
+    private static final Pattern ONLINE = Pattern.compile("online\\s*(>=|>|<=|<|==|=|!=)\\s*(\\d+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PLAYER_JOINS = Pattern.compile("player\\s+(\\S+)\\s+joins", Pattern.CASE_INSENSITIVE);
+    private static final Pattern DOWN_FOR = Pattern.compile("down\\s+(?:for\\s*)?(?:>=?\\s*)?(\\d+)\\s*(s|secs?|seconds?|m|mins?|minutes?|h|hours?)",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern VERSION_CHANGES = Pattern.compile("version\\s+changes", Pattern.CASE_INSENSITIVE);
+    private static final Pattern MOTD_MATCHES = Pattern.compile("motd\\s*(?:matches|~)\\s*(.+)", Pattern.CASE_INSENSITIVE);
+
+    private final String text;
+    private final Kind kind;
+    private final String operator; // ONLINE only, "=" read as "=="
+    private final long threshold;  // players for ONLINE, ms for DOWN_FOR
+    private final String player;   // PLAYER_JOINS only, lower case name or UUID
+    private final Pattern pattern; // MOTD_MATCHES only
+
+    private AlertRule(String text, Kind kind, String operator, long threshold, String player, Pattern pattern){
+        this.text = text;
+        this.kind = kind;
+        this.operator = operator;
+        this.threshold = threshold;
+        this.player = player;
+        this.pattern = pattern;
+    }
+
+    /* Public Methods */
+
+    /**
+     * @param text The rule, as the user wrote it
+     * @return The parsed rule
+     * @throws IllegalArgumentException If the text isn't a rule
+     */
+    public static AlertRule parse(String text){
+        String rule = text.trim();
+        Matcher matcher;
+        if((matcher = ONLINE.matcher(rule)).matches()) {
+            String operator = matcher.group(1).equals("=") ? "==" : matcher.group(1);
+            return new AlertRule(rule, Kind.ONLINE, operator, parseCount(matcher.group(2)), null, null);
+        }
+        if((matcher = PLAYER_JOINS.matcher(rule)).matches())
+            return new AlertRule(rule, Kind.PLAYER_JOINS, null, 0, PlayerRegistry.toKey(matcher.group(1)), null);
+        if((matcher = DOWN_FOR.matcher(rule)).matches()) {
+            char unit = Character.toLowerCase(matcher.group(2).charAt(0));
+            TimeUnit timeUnit = (unit == 's') ? TimeUnit.SECONDS : (unit == 'm') ? TimeUnit.MINUTES : TimeUnit.HOURS;
+            return new AlertRule(rule, Kind.DOWN_FOR, null, timeUnit.toMillis(parseCount(matcher.group(1))), null, null);
+        }
+        if(VERSION_CHANGES.matcher(rule).matches())
+            return new AlertRule(rule, Kind.VERSION_CHANGES, null, 0, null, null);
+        if((matcher = MOTD_MATCHES.matcher(rule)).matches()) {
+            try {
+                return new AlertRule(rule, Kind.MOTD_MATCHES, null, 0, null, Pattern.compile(matcher.group(1).trim()));
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("Bad MOTD pattern in rule: " + rule, e);
+            }
+        }
+        throw new IllegalArgumentException("Not an alert rule: " + rule);
+    }
+
+    /* Private Methods */
+
+    private static int parseCount(String digits){
+        try {
+            return Integer.parseInt(digits);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Number out of range: " + digits, e);
+        }
+    }
+
+    /* Contract Methods */
+
+    @Override
+    public String toString(){
+        return this.text;
+    }
+
+    /* Getters */
+
+    public String getText(){
+        return this.text;
+    }
+
+    public Kind getKind(){
+        return this.kind;
+    }
+
+    public String getOperator(){
+        return this.operator;
+    }
+
+    public long getThreshold(){
+        return this.threshold;
+    }
+
+    public String getPlayer(){
+        return this.player;
+    }
+
+    public Pattern getPattern(){
+        return this.pattern;
+    }
+}
@@ -0,0 +1,235 @@
+package MCHerald.alert;
+
+import MCHerald.player.PlayerRegistry;
+import MCHerald.player.PresenceDiff;
+import MCHerald.util.Language;
+
+import java.util.*;
+
+/**
+ * A set of {@link AlertRule}s compiled into indexes over the fields they depend on, so a status update only
+ * evaluates the rules of the fields it changed, and mostly not even all of those:
+ * the count thresholds and down times are sorted, so a change from one value to another fires the rules
+ * whose threshold lies in between after a binary search; exact counts and players are hashed.
+ * Only MOTD patterns are matched one by one, and only when the MOTD changed.
+ * Rules fire on the update that turns them true, so the update carries the values before and after (see {@link Change}).
+ * Immutable, and so shared by every server's update.
+ */
+public class AlertRules {
+
+    public static final AlertRules EMPTY = new AlertRules(Collections.emptyList());
+
+    /**
+     * Told of every rule an update fires, with the notification text for it.
+     */
+    public interface Action {
+        void fire(AlertRule rule, String text);
+    }
+
+    private final List<AlertRule> rules;
+    private final long[] risingAt, fallingAt, downAt; // ascending thresholds of the matching rules below
+    private final AlertRule[] rising, falling, down;
+    private final HashMap<Long, List<AlertRule>> equal, notEqual; // by count
+    private final HashMap<String, List<AlertRule>> byPlayer;      // by lower case name or UUID
+    private final AlertRule[] versionRules, motdRules;
+
+    /**
+     * @param rules Parsed rules, compiled once here
+     */
+    public AlertRules(List<AlertRule> rules){
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        List<AlertRule> rising = new ArrayList<>(), falling = new ArrayList<>(), down = new ArrayList<>();
+        List<AlertRule> versionRules = new ArrayList<>(), motdRules = new ArrayList<>();
+        this.equal = new HashMap<>();
+        this.notEqual = new HashMap<>();
+        this.byPlayer = new HashMap<>();
+        for(AlertRule rule : rules){
+            switch (rule.getKind()){
+                case ONLINE:
+                    if(rule.getOperator().startsWith(">")) rising.add(rule);
+                    else if(rule.getOperator().startsWith("<")) falling.add(rule);
+                    else (rule.getOperator().equals("==") ? equal : notEqual).computeIfAbsent(rule.getThreshold(), k -> new ArrayList<>()).add(rule);
+                    break;
+                case PLAYER_JOINS:
+                    byPlayer.computeIfAbsent(rule.getPlayer(), k -> new ArrayList<>()).add(rule);
+                    break;
+                case DOWN_FOR:
+                    down.add(rule);
+                    break;
+                case VERSION_CHANGES:
+                    versionRules.add(rule);
+                    break;
+                case MOTD_MATCHES:
+                    motdRules.add(rule);
+                    break;
+            }
+        }
+        this.rising = sorted(rising);
+        this.risingAt = thresholds(this.rising);
+        this.falling = sorted(falling);
+        this.fallingAt = thresholds(this.falling);
+        this.down = sorted(down);
+        this.downAt = thresholds(this.down);
+        this.versionRules = versionRules.toArray(new AlertRule[0]);
+        this.motdRules = motdRules.toArray(new AlertRule[0]);
+    }
+
+    /* Public Methods */
+
+    /**
+     * Fires every rule the change turned true.
+     */
+    public void evaluate(Change change, Action action){
+        if(change.isOnlineChanged && change.online != change.lastOnline) evaluateOnline(change, action);
+        if(change.joined != null && !byPlayer.isEmpty()) evaluatePlayers(change, action);
+        if(change.downtime > change.lastDowntime && down.length > 0) {
+            for(int i = firstAbove(downAt, change.lastDowntime); i < down.length && downAt[i] <= change.downtime; i++)
+                action.fire(down[i], String.format(Language.ALERT_RULE.DOWN_FORMAT, down[i].getText()));
+        }
+        if(change.version != null && !change.version.equals(change.lastVersion) && change.lastVersion != null) {
+            for(AlertRule rule : versionRules)
+                action.fire(rule, String.format(Language.ALERT_RULE.VERSION_FORMAT, change.lastVersion, change.version));
+        }
+        if(change.motd != null && !change.motd.equals(change.lastMotd)) {
+            for(AlertRule rule : motdRules){
+                if(rule.getPattern().matcher(change.motd).find()
+                        && (change.lastMotd == null || !rule.getPattern().matcher(change.lastMotd).find()))
+                    action.fire(rule, String.format(Language.ALERT_RULE.MOTD_FORMAT, change.motd.trim()));
+            }
+        }
+    }
+
+    public List<AlertRule> getRules(){
+        return this.rules;
+    }
+
+    public boolean isEmpty(){
+        return this.rules.isEmpty();
+    }
+
+    /* Private Methods */
+
+    // ">" N holds from N + 1 up, "<" N from N - 1 down; a rising rule turns true as the count passes its threshold going up, a falling one going down.
+    private void evaluateOnline(Change change, Action action){
+        if(change.online > change.lastOnline) {
+            for(int i = firstAbove(risingAt, change.lastOnline); i < rising.length && risingAt[i] <= change.online; i++)
+                action.fire(rising[i], String.format(Language.ALERT_RULE.ONLINE_FORMAT, change.online, rising[i].getText()));
+        } else {
+            for(int i = firstAbove(fallingAt, change.online - 1); i < falling.length && fallingAt[i] < change.lastOnline; i++)
+                action.fire(falling[i], String.format(Language.ALERT_RULE.ONLINE_FORMAT, change.online, falling[i].getText()));
+        }
+        List<AlertRule> matched = equal.get((long) change.online);
+        if(matched != null) {
+            for(AlertRule rule : matched) action.fire(rule, String.format(Language.ALERT_RULE.ONLINE_FORMAT, change.online, rule.getText()));
+        }
+        matched = notEqual.get((long) change.lastOnline);
+        if(matched != null) {
+            for(AlertRule rule : matched) action.fire(rule, String.format(Language.ALERT_RULE.ONLINE_FORMAT, change.online, rule.getText()));
+        }
+    }
+
+    private void evaluatePlayers(Change change, Action action){
+        PresenceDiff joined = change.joined;
+        for(int n = 0; n < joined.getJoinedCount(); n++){
+            int id = joined.getAfter().getId(joined.getJoined(n));
+            String name = PlayerRegistry.INSTANCE.getName(id);
+            if(name == null) continue;
+            List<AlertRule> matched = byPlayer.get(name.toLowerCase(Locale.ROOT));
+            UUID uuid = PlayerRegistry.INSTANCE.getUuid(id);
+            if(matched == null && uuid != null) matched = byPlayer.get(uuid.toString());
+            if(matched == null) continue;
+            for(AlertRule rule : matched)
+                action.fire(rule, String.format(Language.SERVER.NOTIFICATION_SMALL_SINGULAR_FORMAT, name));
+        }
+    }
+
+    private static AlertRule[] sorted(List<AlertRule> rules){
+        AlertRule[] sorted = rules.toArray(new AlertRule[0]);
+        Arrays.sort(sorted, Comparator.comparingLong(AlertRules::threshold));
+        return sorted;
+    }
+
+    private static long[] thresholds(AlertRule[] rules){
+        long[] thresholds = new long[rules.length];
+        for(int i = 0; i < rules.length; i++) thresholds[i] = threshold(rules[i]);
+        return thresholds;
+    }
+
+    // The value a rule turns true at: the count for ">=" / "<=", one past it for ">" / "<", the time for DOWN_FOR
+    private static long threshold(AlertRule rule){
+        if(rule.getKind() != AlertRule.Kind.ONLINE) return rule.getThreshold();
+        if(rule.getOperator().equals(">")) return rule.getThreshold() + 1;
+        if(rule.getOperator().equals("<")) return rule.getThreshold() - 1;
+        return rule.getThreshold();
+    }
+
+    // Index of the first value above the given one, values.length if none
+    private static int firstAbove(long[] values, long value){
+        int low = 0, high = values.length;
+        while (low < high){
+            int middle = (low + high) >>> 1;
+            if(values[middle] <= value) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * What one status update of a server changed, the values before and after, to evaluate the rules against.
+     * Reused from one update of a server to the next: clear it, then set what the update knows of.
+     */
+    public static class Change {
+
+        private boolean isOnlineChanged;
+        private int lastOnline, online;
+        private PresenceDiff joined;
+        private long lastDowntime, downtime;
+        private String lastVersion, version, lastMotd, motd;
+
+        /* Public Methods */
+
+        public Change clear(){
+            isOnlineChanged = false;
+            joined = null;
+            lastDowntime = downtime = 0;
+            lastVersion = version = lastMotd = motd = null;
+            return this;
+        }
+
+        public Change online(int lastOnline, int online){
+            this.isOnlineChanged = true;
+            this.lastOnline = lastOnline;
+            this.online = online;
+            return this;
+        }
+
+        /**
+         * @param joined Diff of the server's players, from the last update to this one
+         */
+        public Change players(PresenceDiff joined){
+            this.joined = joined;
+            return this;
+        }
+
+        /**
+         * @param lastDowntime How long (ms) the server had been down as of the last update, 0 if it was up
+         */
+        public Change downtime(long lastDowntime, long downtime){
+            this.lastDowntime = lastDowntime;
+            this.downtime = downtime;
+            return this;
+        }
+
+        public Change version(String lastVersion, String version){
+            this.lastVersion = lastVersion;
+            this.version = version;
+            return this;
+        }
+
+        public Change motd(String lastMotd, String motd){
+            this.lastMotd = lastMotd;
+            this.motd = motd;
+            return this;
+        }
+    }
+}
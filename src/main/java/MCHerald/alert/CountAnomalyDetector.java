@@ -0,0 +1,152 @@
+package MCHerald.alert;
+
+import java.util.TimeZone;
+
+/**
+ * Online anomaly detector over one server's players.online, one sample per successful ping.
+ * It learns what each hour of the (local) day usually sees, as an exponentially weighted mean and variance per hour
+ * over about SEASON_DAYS, and reads the norm at any time between the two nearest hours, so the daily rise and fall
+ * isn't news. What it watches is the residual, the count less that norm: its recent level (weighted over TAU of
+ * wall time, as pings are irregular), plus a two-sided CUSUM of its z-scores for shifts too slow to spike.
+ * A sample far off the recent level is a SURGE or a DROP; a recent level far off the norm is UNUSUAL_FOR_TIME,
+ * told once until it's back near the norm.
+ * Variances are floored at the norm (as for a Poisson count), a change must be MIN_DELTA players and MIN_CHANGE_PERCENT
+ * of the norm at least, and each signal then holds off for COOLDOWN, so small or noisy servers don't flood the tray.
+ * It only speaks once the hours around the sample were seen for SEASON_WARMUP. Constant memory and O(1) work per sample.
+ * Not thread safe: one per server.
+ */
+public class CountAnomalyDetector {
+
+    public enum Signal {NONE, SURGE, DROP, UNUSUAL_FOR_TIME}
+
+    static final long HOUR = 3_600_000;
+    static final long TAU = 30 * 60_000;            // ms, time constant of the residual's recent level
+    static final int SEASON_DAYS = 7;               // days an hour's norm is weighted over
+    static final long SEASON_WARMUP = 3 * HOUR;     // ms of samples an hour needs (ie 3 days of it) before it's trusted
+    static final int WARMUP = 10;                   // samples of residual before any signal
+    static final double Z_THRESHOLD = 5;
+    static final double Z_CLAMP = 10;               // so a single outlier doesn't run the CUSUM up on its own
+    static final double CUSUM_SLACK = 1;            // z the CUSUM lets through each sample, in standard deviations
+    static final double CUSUM_THRESHOLD = 15;
+    static final int MIN_DELTA = 5;                 // players
+    static final int MIN_CHANGE_PERCENT = 20;
+    static final long COOLDOWN = 30 * 60_000;       // ms, between two signals of the same kind
+
+    private final double[] hourMean = new double[24], hourVariance = new double[24];
+    private final long[] hourSeen = new long[24];   // ms of samples each hour has seen
+    private final long[] signalledAt = new long[Signal.values().length];
+    private double level, variance;                 // of the residual
+    private double cusumUp, cusumDown;
+    private long residuals, lastTime;
+    private double expected = Double.NaN, zScore;
+    private boolean isUnusual;                      // whether the level is off the norm, since it was told
+
+    /* Public Methods */
+
+    /**
+     * Folds a sample in, after testing it against what came before.
+     * @param online The server's players.online
+     * @param now The ping's time, in ms
+     * @return The signal the sample raises, NONE if none (or if it's held off)
+     */
+    public Signal update(int online, long now){
+        double dt = (lastTime == 0) ? 0 : Math.max(0, now - lastTime);
+        lastTime = now;
+        double hours = localHours(now);
+        int hour = (int) hours;
+
+        // the norm between the two nearest hours, whose means are taken as their middle's
+        int previous = (hours - hour < 0.5) ? (hour + 23) % 24 : hour;
+        int next = (previous + 1) % 24;
+        double weight = ((hours - previous - 0.5) % 24 + 24) % 24;
+        boolean isKnown = hourSeen[previous] >= SEASON_WARMUP && hourSeen[next] >= SEASON_WARMUP;
+        expected = isKnown ? hourMean[previous] + (hourMean[next] - hourMean[previous]) * weight : Double.NaN;
+
+        Signal signal = isKnown ? test(online, hour, dt) : Signal.NONE;
+        if(!isKnown) residuals = 0;
+
+        // every hour of the day weighs its samples over SEASON_DAYS of that hour
+        double hourAlpha = (hourSeen[hour] == 0) ? 1 : 1 - Math.exp(-dt / (SEASON_DAYS * (double) HOUR));
+        double hourDiff = online - hourMean[hour];
+        double hourIncrement = hourAlpha * hourDiff;
+        hourMean[hour] += hourIncrement;
+        hourVariance[hour] = (1 - hourAlpha) * (hourVariance[hour] + hourDiff * hourIncrement);
+        hourSeen[hour] += (long) Math.min(dt, HOUR);
+
+        if(signal == Signal.NONE || now - signalledAt[signal.ordinal()] < COOLDOWN) return Signal.NONE;
+        signalledAt[signal.ordinal()] = now;
+        return signal;
+    }
+
+    /**
+     * @return What the server usually sees at the time of the last sample, NaN while it's still learning that time
+     */
+    public double getExpected(){
+        return this.expected;
+    }
+
+    /* Private Methods */
+
+    // Tests the sample's residual against its recent level, then folds it in.
+    private Signal test(int online, int hour, double dt){
+        double residual = online - expected;
+        double floor = Math.max(1, expected);
+        if(residuals == 0) { // (re)start the level, ie once the hours around are first known
+            level = residual;
+            variance = 0;
+            cusumUp = cusumDown = 0;
+            isUnusual = false;
+        }
+        zScore = (residual - level) / Math.sqrt(Math.max(variance, floor));
+        double z = Math.max(-Z_CLAMP, Math.min(Z_CLAMP, zScore));
+        cusumUp = Math.max(0, cusumUp + z - CUSUM_SLACK);
+        cusumDown = Math.max(0, cusumDown - z - CUSUM_SLACK);
+
+        double alpha = (residuals == 0) ? 1 : 1 - Math.exp(-dt / TAU);
+        double diff = residual - level;
+        double increment = alpha * diff;
+        level += increment;
+        variance = (1 - alpha) * (variance + diff * increment);
+        if(residuals++ < WARMUP) return Signal.NONE;
+
+        double minDelta = Math.max(MIN_DELTA, expected * MIN_CHANGE_PERCENT / 100);
+        boolean isJump = Math.abs(residual - (level - increment)) >= minDelta;
+        if(isJump && (zScore >= Z_THRESHOLD || cusumUp >= CUSUM_THRESHOLD)) {
+            cusumUp = 0;
+            return Signal.SURGE;
+        }
+        if(isJump && (zScore <= -Z_THRESHOLD || cusumDown >= CUSUM_THRESHOLD)) {
+            cusumDown = 0;
+            return Signal.DROP;
+        }
+        // told once on the way in, and again only after the level settled back (to half the threshold)
+        double levelZ = level / Math.sqrt(Math.max(hourVariance[hour], floor));
+        if(isUnusual) {
+            isUnusual = Math.abs(levelZ) >= Z_THRESHOLD / 2;
+            return Signal.NONE;
+        }
+        // the sample itself has to agree, or it's only the level still decaying off an anomaly that's over
+        if(Math.abs(level) < minDelta || Math.abs(residual) < minDelta || Math.signum(residual) != Math.signum(level))
+            return Signal.NONE;
+        isUnusual = Math.abs(levelZ) >= Z_THRESHOLD;
+        return isUnusual ? Signal.UNUSUAL_FOR_TIME : Signal.NONE;
+    }
+
+    // Hours since local midnight, fractional
+    private static double localHours(long now){
+        long local = now + TimeZone.getDefault().getOffset(now);
+        return Math.floorMod(local, 24 * HOUR) / (double) HOUR;
+    }
+
+    /* Getters */
+
+    // z-score of the last sample's residual against its recent level
+    public double getZScore(){
+        return this.zScore;
+    }
+
+    // How far the residual's recent level is off the norm, in players
+    public double getLevel(){
+        return this.level;
+    }
+}
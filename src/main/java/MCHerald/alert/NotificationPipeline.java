@@ -0,0 +1,243 @@
+package MCHerald.alert;
+
+import MCHerald.util.Constants;
+import MCHerald.util.Language;
+import MCHerald.util.Notification;
+import MCHerald.util.Shuttable;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Notification stage between the ping threads and the tray, which only shows one notification at a time.
+ * Events are batched over a short WINDOW after the first of them; within a batch, the events of one key (server)
+ * are merged into one, the later superseding the earlier (two joins still name their players, more are counted),
+ * and past MAX_SHOWN servers they are summed up into a single
+ * notification ("5 servers: 9 players joined"). Alerts (any message type but NONE, ie watched players) are merged
+ * per key only, and shown first; past MAX_ALERTS of them, the rest are summed up too ("7 more alerts").
+ * Events past MAX_AGE by the time they'd show are dropped rather than shown late.
+ * The queue is bounded: producers never block, and when it's full the oldest event is dropped (and counted).
+ */
+public class NotificationPipeline implements Shuttable {
+
+    static final long WINDOW = 1_000;       // ms, how long the first event of a batch waits for the ones following it
+    static final long DISPLAY_GAP = 2_000;  // ms, each shown notification gets before the next replaces it
+    static final long MAX_AGE = 60_000;     // ms
+    static final int MAX_SHOWN = 2;         // server notifications per batch, past which they're summed up
+    static final int MAX_ALERTS = 3;        // alerts per batch, past which the rest are summed up
+
+    private final ArrayBlockingQueue<Notification> queue;
+    private final LinkedHashMap<String, Notification> pending; // key -> merged events of the batch, pipeline thread only
+    private final Consumer<Notification> display;
+    private final long displayGap;
+    private final Thread thread;
+    private volatile boolean isRunning;
+
+    private final AtomicLong offered, dropped;
+    private volatile long coalesced, expired, shown; // written by the pipeline thread only
+    private volatile long lastLag, maxLag;           // ms, from an event's creation to its showing
+
+    /**
+     * @param capacity Most events waiting to be batched
+     * @param display Shows a notification (ie on the tray), from the pipeline's thread
+     */
+    public NotificationPipeline(int capacity, Consumer<Notification> display){
+        this(capacity, DISPLAY_GAP, display);
+    }
+
+    NotificationPipeline(int capacity, long displayGap, Consumer<Notification> display){
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.displayGap = displayGap;
+        this.pending = new LinkedHashMap<>();
+        this.display = display;
+        this.offered = new AtomicLong();
+        this.dropped = new AtomicLong();
+        this.isRunning = true;
+        this.thread = new Thread(this::run, "Notification Pipeline");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /* Public Methods */
+
+    /**
+     * Queues a notification without blocking; if the queue is full, the oldest waiting one is dropped for it.
+     */
+    public void offer(Notification notification){
+        offered.incrementAndGet();
+        while (!queue.offer(notification)){
+            if(queue.poll() != null) dropped.incrementAndGet();
+        }
+    }
+
+    /* Private Methods */
+
+    private void run(){
+        while (isRunning){
+            try {
+                Notification first = queue.take();
+                add(first);
+                // events created while the last batch was shown have already waited out their window
+                long batchEnd = first.createdAt + WINDOW;
+                long now;
+                while ((now = System.currentTimeMillis()) < batchEnd){
+                    Notification next = queue.poll(batchEnd - now, TimeUnit.MILLISECONDS);
+                    if(next == null) break;
+                    add(next);
+                }
+                for(Notification next; (next = queue.poll()) != null; ) add(next);
+                flush();
+            } catch (InterruptedException e) {
+                if(isRunning) e.printStackTrace();
+            }
+        }
+    }
+
+    private void add(Notification notification){
+        Notification earlier = pending.get(notification.key);
+        if(earlier == null) {
+            pending.put(notification.key, notification);
+            return;
+        }
+        coalesced++;
+        pending.put(notification.key, merge(earlier, notification));
+    }
+
+    // The later event supersedes the earlier, but the players both report as joined add up.
+    private static Notification merge(Notification earlier, Notification later){
+        int joined = earlier.joined + later.joined;
+        String names = (earlier.joined == 0) ? later.names
+                : (later.joined == 0) ? earlier.names
+                : (earlier.names == null || later.names == null) ? null : earlier.names + ", " + later.names;
+        String text = later.text;
+        if(joined > 1 && joined > later.joined) {
+            text = (joined == 2 && names != null)
+                    ? String.format(Language.SERVER.NOTIFICATION_SMALL_PLURAL_FORMAT, names)
+                    : String.format(Language.NOTIFICATION.JOINED_FORMAT, joined);
+        }
+        Notification merged = new Notification(later.key, later.caption, text, later.messageType, joined);
+        merged.names = names;
+        merged.createdAt = earlier.createdAt;
+        return merged;
+    }
+
+    private void flush() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        List<Notification> servers = new ArrayList<>();
+        List<Notification> alerts = new ArrayList<>();
+        for(Notification notification : pending.values()){
+            if(now - notification.createdAt > MAX_AGE) expired++;
+            else if(notification.messageType == TrayIcon.MessageType.NONE) servers.add(notification);
+            else alerts.add(notification);
+        }
+        pending.clear();
+
+        // each one shown holds the pipeline for displayGap, so a burst of alerts mustn't hold it for minutes
+        for(Notification alert : alerts.subList(0, Math.min(alerts.size(), MAX_ALERTS))) show(alert);
+        if(alerts.size() > MAX_ALERTS) {
+            List<Notification> rest = alerts.subList(MAX_ALERTS, alerts.size());
+            coalesced += rest.size() - 1;
+            Notification summary = new Notification(null, Language.NOTIFICATION.SUMMARY_CAPTION,
+                    String.format(Language.NOTIFICATION.SUMMARY_ALERTS_FORMAT, rest.size()), TrayIcon.MessageType.INFO, 0);
+            summary.createdAt = oldest(rest);
+            show(summary);
+        }
+        if(servers.size() > MAX_SHOWN) {
+            coalesced += servers.size() - 1;
+            show(summarize(servers));
+        } else {
+            for(Notification server : servers) show(server);
+        }
+        if(Constants.DEBUG) System.out.println("Notifications: " + this);
+    }
+
+    private static Notification summarize(List<Notification> servers){
+        int joined = 0;
+        for(Notification server : servers) joined += server.joined;
+        String text = (joined > 0)
+                ? String.format(Language.NOTIFICATION.SUMMARY_JOINED_FORMAT, servers.size(), joined)
+                : String.format(Language.NOTIFICATION.SUMMARY_CHANGED_FORMAT, servers.size());
+        Notification summary = new Notification(null, Language.NOTIFICATION.SUMMARY_CAPTION, text, TrayIcon.MessageType.NONE, joined);
+        summary.createdAt = oldest(servers);
+        return summary;
+    }
+
+    private static long oldest(List<Notification> notifications){
+        long createdAt = Long.MAX_VALUE;
+        for(Notification notification : notifications) createdAt = Math.min(createdAt, notification.createdAt);
+        return createdAt;
+    }
+
+    private void show(Notification notification) throws InterruptedException {
+        long lag = System.currentTimeMillis() - notification.createdAt;
+        if(lag > MAX_AGE) { // went stale while the ones before were shown
+            expired++;
+            return;
+        }
+        display.accept(notification);
+        shown++;
+        lastLag = lag;
+        maxLag = Math.max(maxLag, lastLag);
+        TimeUnit.MILLISECONDS.sleep(displayGap); // Give time for this notification, before popping the next up
+    }
+
+    /* Contract Methods */
+
+    @Override
+    public void shutdown(){
+        this.isRunning = false;
+        this.thread.interrupt();
+    }
+
+    @Override
+    public String toString(){
+        return String.format("%d offered, %d dropped, %d coalesced, %d expired, %d shown, %d queued, lag %d ms (max %d ms)",
+                getOffered(), getDropped(), coalesced, expired, shown, queue.size(), lastLag, maxLag);
+    }
+
+    /* Getters */
+
+    public long getOffered(){
+        return this.offered.get();
+    }
+
+    // Events dropped because the queue was full
+    public long getDropped(){
+        return this.dropped.get();
+    }
+
+    // Events merged into another one of the same key, or into a summary
+    public long getCoalesced(){
+        return this.coalesced;
+    }
+
+    // Events dropped for waiting past MAX_AGE
+    public long getExpired(){
+        return this.expired;
+    }
+
+    public long getShown(){
+        return this.shown;
+    }
+
+    public int getQueued(){
+        return this.queue.size();
+    }
+
+    /**
+     * @return Time from the creation of the last shown notification (its oldest event) to its showing, in ms
+     */
+    public long getLastLag(){
+        return this.lastLag;
+    }
+
+    public long getMaxLag(){
+        return this.maxLag;
+    }
+}
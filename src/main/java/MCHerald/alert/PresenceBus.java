@@ -0,0 +1,162 @@
+package MCHerald.alert;
+
+import MCHerald.util.Shuttable;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stream of {@link PresenceEvent}s from the ping path to any number of subscribers, over a bounded ring buffer.
+ * Publishing never locks nor waits: a publisher claims the next sequence and sets the matching slot, overwriting
+ * whatever event was there. Each subscriber reads on its own thread with its own cursor, so a slow one never holds
+ * up the ping workers or the other subscribers; one lapped by the writers skips to the oldest event still held,
+ * and counts the ones it missed.
+ */
+public class PresenceBus implements Shuttable {
+
+    /**
+     * Handed every event in sequence order, from the subscription's own thread.
+     */
+    public interface Subscriber {
+        void onEvent(PresenceEvent event);
+    }
+
+    static final long PARK_NANOS = 100_000_000; // longest a waiting subscriber sleeps without being woken
+
+    private final AtomicReferenceArray<PresenceEvent> ring;
+    private final int mask;
+    private final AtomicLong claimed; // next sequence to publish
+    private final CopyOnWriteArrayList<Subscription> subscriptions;
+
+    /**
+     * @param capacity Events held for the subscribers, rounded up to a power of two
+     */
+    public PresenceBus(int capacity){
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.claimed = new AtomicLong();
+        this.subscriptions = new CopyOnWriteArrayList<>();
+    }
+
+    /* Public Methods */
+
+    /**
+     * Publishes an event, from any thread, without blocking.
+     */
+    public void publish(PresenceEvent event){
+        long sequence = claimed.getAndIncrement();
+        event.sequence = sequence;
+        int slot = (int) sequence & mask;
+        while (true){
+            PresenceEvent current = ring.get(slot);
+            if(current != null && current.sequence > sequence) return; // lapped before it was even set, it's lost anyway
+            if(ring.compareAndSet(slot, current, event)) break;
+        }
+        for(Subscription subscription : subscriptions)
+            if(subscription.isWaiting) LockSupport.unpark(subscription.thread);
+    }
+
+    /**
+     * Starts handing the subscriber every event published from now on.
+     * @param name Names the subscription's thread
+     */
+    public Subscription subscribe(String name, Subscriber subscriber){
+        Subscription subscription = new Subscription(name, subscriber, claimed.get());
+        subscriptions.add(subscription);
+        subscription.thread.start();
+        return subscription;
+    }
+
+    /**
+     * @return How many events were ever published
+     */
+    public long getPublished(){
+        return this.claimed.get();
+    }
+
+    public int getCapacity(){
+        return this.mask + 1;
+    }
+
+    /* Contract Methods */
+
+    @Override
+    public void shutdown(){
+        for(Subscription subscription : subscriptions) subscription.cancel();
+    }
+
+    /**
+     * A subscriber's cursor on the bus, and the thread that walks it.
+     */
+    public class Subscription {
+
+        private final Subscriber subscriber;
+        private final Thread thread;
+        private volatile long cursor;   // next sequence to hand over
+        private volatile long missed;
+        private volatile boolean isWaiting, isCancelled;
+
+        private Subscription(String name, Subscriber subscriber, long cursor){
+            this.subscriber = subscriber;
+            this.cursor = cursor;
+            this.thread = new Thread(this::run, name);
+            this.thread.setDaemon(true);
+        }
+
+        /* Public Methods */
+
+        public void cancel(){
+            this.isCancelled = true;
+            subscriptions.remove(this);
+            LockSupport.unpark(thread);
+        }
+
+        /* Private Methods */
+
+        private void run(){
+            while (!isCancelled){
+                PresenceEvent event = ring.get((int) cursor & mask);
+                if(event == null || event.sequence < cursor) { // not published yet
+                    isWaiting = true;
+                    event = ring.get((int) cursor & mask); // a publisher may have missed the flag
+                    if(event == null || event.sequence < cursor) LockSupport.parkNanos(this, PARK_NANOS);
+                    isWaiting = false;
+                    continue;
+                }
+                if(event.sequence > cursor) { // lapped, the events from the cursor on were overwritten
+                    long oldest = Math.max(cursor + 1, claimed.get() - mask - 1);
+                    missed += oldest - cursor;
+                    cursor = oldest;
+                    continue;
+                }
+                try {
+                    subscriber.onEvent(event);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+                cursor++;
+            }
+        }
+
+        /* Getters */
+
+        /**
+         * @return Events published but not yet handed to the subscriber
+         */
+        public long getLag(){
+            return Math.max(0, claimed.get() - cursor);
+        }
+
+        // Events overwritten before the subscriber got to them
+        public long getMissed(){
+            return this.missed;
+        }
+
+        public String getName(){
+            return this.thread.getName();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package MCHerald.alert;
+
+import MCHerald.player.PlayerRegistry;
+
+/**
+ * Something that changed on a server between two pings, as published on the {@link PresenceBus}. Immutable once published.
+ */
+public class PresenceEvent {
+
+    public enum Type {JOINED, LEFT, COUNT_CHANGED, SERVER_UP, SERVER_DOWN, VERSION_CHANGED}
+
+    private final Type type;
+    private final String server;   // UUID of the ServerInfo
+    private final int player;      // registry id, NONE but for JOINED and LEFT
+    private final int online, previousOnline;
+    private final String version;  // the server's version name, null if unknown
+    private final long time;       // ms, wall clock
+    long sequence;                 // position on the bus, set as it's published
+
+    private PresenceEvent(Type type, String server, int player, int online, int previousOnline, String version){
+        this.type = type;
+        this.server = server;
+        this.player = player;
+        this.online = online;
+        this.previousOnline = previousOnline;
+        this.version = version;
+        this.time = System.currentTimeMillis();
+    }
+
+    /* Public Methods */
+
+    public static PresenceEvent joined(String server, int player, int online){
+        return new PresenceEvent(Type.JOINED, server, player, online, online, null);
+    }
+
+    public static PresenceEvent left(String server, int player, int online){
+        return new PresenceEvent(Type.LEFT, server, player, online, online, null);
+    }
+
+    public static PresenceEvent countChanged(String server, int previousOnline, int online){
+        return new PresenceEvent(Type.COUNT_CHANGED, server, PlayerRegistry.NONE, online, previousOnline, null);
+    }
+
+    public static PresenceEvent up(String server, int online, String version){
+        return new PresenceEvent(Type.SERVER_UP, server, PlayerRegistry.NONE, online, 0, version);
+    }
+
+    public static PresenceEvent down(String server, int previousOnline){
+        return new PresenceEvent(Type.SERVER_DOWN, server, PlayerRegistry.NONE, 0, previousOnline, null);
+    }
+
+    public static PresenceEvent versionChanged(String server, int online, String version){
+        return new PresenceEvent(Type.VERSION_CHANGED, server, PlayerRegistry.NONE, online, online, version);
+    }
+
+    /* Contract Methods */
+
+    @Override
+    public String toString(){
+        return "PresenceEvent [" + sequence + ", " + type + ", " + server
+                + ((player == PlayerRegistry.NONE) ? "" : ", " + PlayerRegistry.INSTANCE.getName(player))
+                + ", " + previousOnline + " -> " + online + ((version == null) ? "" : ", " + version) + "]";
+    }
+
+    /* Getters */
+
+    public Type getType(){
+        return this.type;
+    }
+
+    public String getServer(){
+        return this.server;
+    }
+
+    // The player who joined or left, or NONE
+    public int getPlayer(){
+        return this.player;
+    }
+
+    // players.online after the change
+    public int getOnline(){
+        return this.online;
+    }
+
+    public int getPreviousOnline(){
+        return this.previousOnline;
+    }
+
+    public String getVersion(){
+        return this.version;
+    }
+
+    public long getTime(){
+        return this.time;
+    }
+
+    public long getSequence(){
+        return this.sequence;
+    }
+}
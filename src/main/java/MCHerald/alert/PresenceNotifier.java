@@ -0,0 +1,69 @@
+package MCHerald.alert;
+
+import MCHerald.MCHerald;
+import MCHerald.player.PlayerRegistry;
+import MCHerald.util.Constants;
+import MCHerald.util.Language;
+import MCHerald.util.Notification;
+import MCHerald.util.ServerInfo;
+
+import java.awt.*;
+import java.util.function.Consumer;
+
+/**
+ * Bus subscriber turning a notifying server's joins and count changes into notifications, for one output
+ * (the tray's pipeline, or the webhooks). Joins are only published once the server's roster converged, so a player
+ * newly sampled isn't told as joined; a count change is told on small servers only, on large ones it's left to
+ * the anomaly detector. The events of one ping are merged by the output, per server.
+ */
+public class PresenceNotifier implements PresenceBus.Subscriber {
+
+    private final MCHerald herald;
+    private final Consumer<Notification> output;
+
+    /**
+     * @param output Takes the notifications, from the subscription's thread; it mustn't block
+     */
+    public PresenceNotifier(MCHerald herald, Consumer<Notification> output){
+        this.herald = herald;
+        this.output = output;
+    }
+
+    /* Contract Methods */
+
+    @Override
+    public void onEvent(PresenceEvent event){
+        if(!herald.getNotifying()) return;
+        ServerInfo server = herald.getServerList().get(event.getServer());
+        if(server == null || !server.getState()) return;
+
+        switch (event.getType()) {
+            case JOINED:
+                String name = PlayerRegistry.INSTANCE.getName(event.getPlayer());
+                if(name == null) return;
+                Notification joined = new Notification(
+                        server.getUUID(),
+                        server.getName(),
+                        String.format(Language.SERVER.NOTIFICATION_SMALL_SINGULAR_FORMAT, name),
+                        TrayIcon.MessageType.NONE,
+                        1
+                );
+                joined.names = name; // so two joins merged still name both
+                output.accept(joined);
+                break;
+            case COUNT_CHANGED:
+                if(event.getOnline() >= Constants.ANOMALY_LARGE_SERVER) return;
+                // reports no join of its own: the joins of the same ping follow it, and are merged into it
+                output.accept(new Notification(
+                        server.getUUID(),
+                        server.getName(),
+                        String.format(Language.SERVER.NOTIFICATION_LARGE_FORMAT, event.getOnline() + "/" + server.getMaxPlayers()),
+                        TrayIcon.MessageType.NONE,
+                        0
+                ));
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package MCHerald.alert;
+
+import MCHerald.util.Notification;
+import MCHerald.util.Shuttable;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbound sink POSTing the herald's notifications, as JSON batches, to any number of webhook endpoints.
+ * Each endpoint batches the notifications of a WINDOW, and has one batch in flight at a time (in order, over the
+ * JDK's kept-alive connections); at most maxConcurrent batches are sent at once across endpoints.
+ * Every batch is written to the spool directory before its first POST, and deleted once delivered. One failing for
+ * a network error, a 429 or a 5xx is retried with exponential back-off; any other status drops it. Spooled batches
+ * not delivered by shutdown (or MAX_ATTEMPTS) are resent once their endpoint is added again, ie on the next start,
+ * before anything newer. An endpoint keeps at most MAX_SPOOLED batches, past which its oldest are dropped.
+ * A URL's spool files are named after its SHA-256, and carry their batch's time and notification count.
+ */
+public class WebhookSink implements Shuttable {
+
+    static final long WINDOW = 2_000;           // ms, the first notification of a batch waits for the ones following it
+    static final int MAX_BATCH = 100;           // notifications per POST
+    static final int MAX_ATTEMPTS = 8;
+    static final long BASE_BACKOFF = 1_000;     // ms, doubled at each failed attempt
+    static final long MAX_BACKOFF = 300_000;    // ms
+    static final int TIMEOUT = 10_000;          // ms, to connect and to read the response
+    static final int MAX_SPOOLED = 200;         // batches per endpoint, on disk and read back at start
+    private static final String SPOOL_SUFFIX = ".json";
+
+    private final Path spool;
+    private final int capacity;
+    private final ConcurrentHashMap<String, Endpoint> endpoints; // url -> endpoint
+    private final ScheduledExecutorService scheduler;          // batching windows and back-offs
+    private final ExecutorService senders;                     // as many threads as batches sent at once
+    private final AtomicLong spoolSequence;
+
+    /**
+     * @param spool Directory batches are kept in until delivered
+     * @param maxConcurrent Most batches being sent at once, over all endpoints
+     * @param capacity Most notifications waiting per endpoint, past which the oldest are dropped
+     */
+    public WebhookSink(Path spool, int maxConcurrent, int capacity){
+        this.spool = spool;
+        this.capacity = capacity;
+        this.endpoints = new ConcurrentHashMap<>();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "Webhook Scheduler"));
+        this.senders = Executors.newFixedThreadPool(maxConcurrent, runnable -> daemon(runnable, "Webhook Sender"));
+        this.spoolSequence = new AtomicLong();
+    }
+
+    /* Public Methods */
+
+    /**
+     * Starts POSTing notifications to the URL, after any of its batches left in the spool.
+     * @throws MalformedURLException If it isn't an http(s) URL
+     */
+    public void addEndpoint(String url) throws MalformedURLException {
+        URL parsed = new URL(url);
+        if(!parsed.getProtocol().equals("http") && !parsed.getProtocol().equals("https"))
+            throw new MalformedURLException("Not an http(s) URL: " + url);
+        Endpoint endpoint = new Endpoint(parsed);
+        if(endpoints.putIfAbsent(url, endpoint) != null) return;
+        endpoint.loadSpool();
+        endpoint.schedule(0);
+    }
+
+    /**
+     * Stops POSTing to the URL, and forgets its spooled batches.
+     */
+    public void removeEndpoint(String url){
+        Endpoint endpoint = endpoints.remove(url);
+        if(endpoint != null) endpoint.clearSpool();
+    }
+
+    /**
+     * Queues the notification for every endpoint, without blocking.
+     */
+    public void offer(Notification notification){
+        for(Endpoint endpoint : endpoints.values()) endpoint.offer(notification);
+    }
+
+    public Set<String> getUrls(){
+        return Collections.unmodifiableSet(this.endpoints.keySet());
+    }
+
+    public Collection<Endpoint> getEndpoints(){
+        return Collections.unmodifiableCollection(this.endpoints.values());
+    }
+
+    /* Private Methods */
+
+    private static Thread daemon(Runnable runnable, String name){
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * POSTs the body and reads the response through, so the connection goes back to the keep-alive pool.
+     * @return The response's status code
+     */
+    private static int post(URL url, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        int status = connection.getResponseCode();
+        InputStream in = (status < 400) ? connection.getInputStream() : connection.getErrorStream();
+        if(in != null) {
+            try (InputStream response = in) {
+                byte[] buffer = new byte[1024];
+                while (response.read(buffer) != -1) ;
+            }
+        }
+        return status;
+    }
+
+    private static byte[] toJson(List<Notification> notifications){
+        JsonArray events = new JsonArray();
+        for(Notification notification : notifications){
+            JsonObject event = new JsonObject();
+            event.addProperty("key", notification.key);
+            event.addProperty("caption", notification.caption);
+            event.addProperty("text", notification.text);
+            event.addProperty("type", notification.messageType.name());
+            event.addProperty("joined", notification.joined);
+            event.addProperty("time", notification.createdAt);
+            events.add(event);
+        }
+        JsonObject batch = new JsonObject();
+        batch.addProperty("source", "MCHerald");
+        batch.add("events", events);
+        return batch.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String sha256(String text){
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for(byte b : hash) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JRE has SHA-256
+        }
+    }
+
+    private static long backoff(int attempts){
+        long delay = Math.min(MAX_BACKOFF, BASE_BACKOFF << Math.min(attempts - 1, 20));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1); // jittered, so endpoints don't retry in step
+    }
+
+    /* Contract Methods */
+
+    // Pending notifications are spooled, to be sent on the next start.
+    @Override
+    public void shutdown(){
+        scheduler.shutdownNow();
+        senders.shutdownNow();
+        for(Endpoint endpoint : endpoints.values()) endpoint.spoolPending();
+    }
+
+    @Override
+    public String toString(){
+        StringJoiner stringJoiner = new StringJoiner(", ", "WebhookSink [", "]");
+        for(Endpoint endpoint : endpoints.values()) stringJoiner.add(endpoint.toString());
+        return stringJoiner.toString();
+    }
+
+    /**
+     * A webhook URL, with its queue, its spooled batches and its delivery metrics.
+     */
+    public class Endpoint {
+
+        private final URL url;
+        private final String spoolPrefix;
+        private final ArrayBlockingQueue<Notification> queue;
+        private final ArrayDeque<Batch> backlog; // spooled batches, sent before the queue; guarded by this
+        private final ArrayDeque<Batch> spooled; // every batch with a spool file, oldest first; guarded by this
+        private Batch sending;                   // guarded by this
+        private boolean isScheduled, isSending;   // guarded by this
+
+        private final AtomicLong dropped;
+        private volatile long deliveredBatches, deliveredEvents, failedAttempts, rejectedBatches;
+        private volatile long lastLatency, maxLatency, totalLatency; // ms, from a batch's oldest notification to its delivery
+
+        private Endpoint(URL url){
+            this.url = url;
+            this.spoolPrefix = sha256(url.toString()) + "-";
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.backlog = new ArrayDeque<>();
+            this.spooled = new ArrayDeque<>();
+            this.dropped = new AtomicLong();
+        }
+
+        /* Private Methods */
+
+        private void offer(Notification notification){
+            while (!queue.offer(notification)){
+                if(queue.poll() != null) dropped.incrementAndGet();
+            }
+            schedule(WINDOW);
+        }
+
+        private synchronized void schedule(long delay){
+            if(isScheduled || isSending || scheduler.isShutdown()) return;
+            isScheduled = true;
+            scheduler.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void flush(){
+            Batch batch;
+            synchronized (this){
+                isScheduled = false;
+                batch = backlog.poll();
+                if(batch == null) {
+                    List<Notification> notifications = new ArrayList<>();
+                    queue.drainTo(notifications, MAX_BATCH);
+                    if(notifications.isEmpty()) return;
+                    batch = new Batch(toJson(notifications), notifications.size(), notifications.get(0).createdAt);
+                }
+                isSending = true;
+                sending = batch;
+            }
+            spool(batch); // so it outlives a shutdown while in flight
+            Batch sent = batch;
+            senders.execute(() -> attempt(sent));
+        }
+
+        private void attempt(Batch batch){
+            batch.attempts++;
+            int status = -1;
+            try {
+                status = post(url, batch.body);
+            } catch (IOException e) {
+                System.out.println("Webhook " + url + " failed: " + e);
+            }
+            if(status >= 200 && status < 300) {
+                delivered(batch);
+            } else if(status == -1 || status == 429 || status >= 500) {
+                failedAttempts++;
+                if(batch.attempts < MAX_ATTEMPTS && !scheduler.isShutdown()) {
+                    scheduler.schedule(() -> senders.execute(() -> attempt(batch)), backoff(batch.attempts), TimeUnit.MILLISECONDS);
+                    return;
+                }
+                // out of attempts: it stays spooled, for the next start
+            } else {
+                System.out.println("Webhook " + url + " rejected a batch: " + status);
+                rejectedBatches++;
+                dropped.addAndGet(batch.count);
+                unspool(batch);
+            }
+            done();
+        }
+
+        private void delivered(Batch batch){
+            unspool(batch);
+            deliveredBatches++;
+            deliveredEvents += batch.count;
+            lastLatency = System.currentTimeMillis() - batch.createdAt;
+            maxLatency = Math.max(maxLatency, lastLatency);
+            totalLatency += lastLatency;
+        }
+
+        // Sends what's next right away if it already waited out its window
+        private void done(){
+            synchronized (this){
+                isSending = false;
+                sending = null;
+            }
+            Notification next = queue.peek();
+            if(!backlog.isEmpty()) schedule(0);
+            else if(next != null) schedule(Math.max(0, next.createdAt + WINDOW - System.currentTimeMillis()));
+        }
+
+        private void spool(Batch batch){
+            if(batch.file != null) return;
+            try {
+                Files.createDirectories(spool);
+                Path file = spool.resolve(String.format("%s%013d-%06d-%d%s", spoolPrefix, System.currentTimeMillis(),
+                        spoolSequence.incrementAndGet() % 1_000_000, batch.count, SPOOL_SUFFIX));
+                Path temp = spool.resolve(file.getFileName() + ".tmp");
+                Files.write(temp, batch.body);
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+                batch.file = file;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            synchronized (this){
+                spooled.add(batch);
+                trimSpool();
+            }
+        }
+
+        // Drops the oldest batches past MAX_SPOOLED, but the one in flight
+        private synchronized void trimSpool(){
+            Iterator<Batch> batches = spooled.iterator();
+            while (spooled.size() > MAX_SPOOLED && batches.hasNext()){
+                Batch oldest = batches.next();
+                if(oldest == sending) continue;
+                batches.remove();
+                backlog.remove(oldest);
+                delete(oldest.file);
+                dropped.addAndGet(oldest.count);
+            }
+        }
+
+        private void unspool(Batch batch){
+            if(batch.file == null) return;
+            synchronized (this){
+                spooled.remove(batch);
+            }
+            delete(batch.file);
+        }
+
+        private void delete(Path file){
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // The notification count in a spool file's name, 0 for a name without one
+        private int spooledCount(Path file){
+            String name = file.getFileName().toString();
+            String[] parts = name.substring(spoolPrefix.length(), name.length() - SPOOL_SUFFIX.length()).split("-");
+            try {
+                return (parts.length < 3) ? 0 : Integer.parseInt(parts[2]);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        // Spooled batches of this URL, oldest first (their names sort by time); the oldest past MAX_SPOOLED are dropped unread
+        private synchronized void loadSpool(){
+            if(!Files.isDirectory(spool)) return;
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(spool, spoolPrefix + "*" + SPOOL_SUFFIX)) {
+                for(Path file : stream) files.add(file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            Collections.sort(files);
+            int excess = files.size() - MAX_SPOOLED;
+            for(Path file : files){
+                if(excess-- > 0) {
+                    dropped.addAndGet(spooledCount(file));
+                    delete(file);
+                    continue;
+                }
+                try {
+                    Batch batch = new Batch(Files.readAllBytes(file), spooledCount(file), Files.getLastModifiedTime(file).toMillis());
+                    batch.file = file;
+                    backlog.add(batch);
+                    spooled.add(batch);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        private synchronized void clearSpool(){
+            for(Batch batch : spooled) delete(batch.file);
+            spooled.clear();
+            backlog.clear();
+        }
+
+        private void spoolPending(){
+            List<Notification> notifications = new ArrayList<>();
+            while (queue.drainTo(notifications, MAX_BATCH) > 0){
+                spool(new Batch(toJson(notifications), notifications.size(), notifications.get(0).createdAt));
+                notifications.clear();
+            }
+        }
+
+        /* Contract Methods */
+
+        @Override
+        public String toString(){
+            return String.format("%s: %d delivered in %d batches, %d failed attempts, %d rejected, %d dropped, %d queued, "
+                            + "%d spooled, latency %d ms (avg %d ms, max %d ms)",
+                    url, deliveredEvents, deliveredBatches, failedAttempts, rejectedBatches, getDropped(), getQueued(),
+                    getSpooled(), lastLatency, getAverageLatency(), maxLatency);
+        }
+
+        /* Getters */
+
+        public String getUrl(){
+            return this.url.toString();
+        }
+
+        public long getDeliveredBatches(){
+            return this.deliveredBatches;
+        }
+
+        public long getDeliveredEvents(){
+            return this.deliveredEvents;
+        }
+
+        // Attempts that failed for a network error, a 429 or a 5xx, each retried (or spooled)
+        public long getFailedAttempts(){
+            return this.failedAttempts;
+        }
+
+        // Batches the endpoint answered with another error status, dropped
+        public long getRejectedBatches(){
+            return this.rejectedBatches;
+        }
+
+        // Notifications dropped, for a full queue, a rejected batch or a full spool
+        public long getDropped(){
+            return this.dropped.get();
+        }
+
+        public int getQueued(){
+            return this.queue.size();
+        }
+
+        public synchronized int getSpooled(){
+            return this.spooled.size();
+        }
+
+        public long getLastLatency(){
+            return this.lastLatency;
+        }
+
+        public long getMaxLatency(){
+            return this.maxLatency;
+        }
+
+        public long getAverageLatency(){
+            return (deliveredBatches == 0) ? 0 : totalLatency / deliveredBatches;
+        }
+    }
+
+    // A POST body, and the spool file it's kept in until delivered.
+    private static class Batch {
+        final byte[] body;
+        final int count;      // notifications it holds
+        final long createdAt; // ms, of its oldest notification
+        int attempts;
+        Path file;
+
+        Batch(byte[] body, int count, long createdAt){
+            this.body = body;
+            this.count = count;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -12,7 +12,7 @@ import java.io.FileNotFoundException;
 
 public class AddServer extends JDialog implements GUI {
 
-    private JTextField nameField, hostField, freqField;
+    private JTextField nameField, hostField, freqField, minFreqField;
 
     public AddServer(MCHerald herald, ServerTable owner){
         super(owner);
@@ -28,13 +28,16 @@ public class AddServer extends JDialog implements GUI {
         this.nameField = new JTextField(30);
         this.hostField = new JTextField(30);
         this.freqField = new JTextField(30);
+        this.minFreqField = new JTextField(30);
         this.nameField.setFont(Constants.APP_FONT);
         this.hostField.setFont(Constants.APP_FONT);
         this.freqField.setFont(Constants.APP_FONT);
+        this.minFreqField.setFont(Constants.APP_FONT);
 
         JLabel nameLabel = new JLabel(Language.ADD_SERVER.NAME);
         JLabel hostLabel = new JLabel(Language.ADD_SERVER.HOST);
         JLabel freqLabel = new JLabel(Language.ADD_SERVER.FREQUENCY);
+        JLabel minFreqLabel = new JLabel(Language.ADD_SERVER.MIN_FREQUENCY);
 
         JPanel form = new JPanel(new GridBagLayout());
         addComp(form, nameLabel, 0, 0, GridBagConstraints.EAST);
@@ -43,6 +46,8 @@ public class AddServer extends JDialog implements GUI {
         addComp(form, hostField, 1, 1, GridBagConstraints.WEST);
         addComp(form, freqLabel, 0, 2, GridBagConstraints.EAST);
         addComp(form, freqField, 1, 2, GridBagConstraints.WEST);
+        addComp(form, minFreqLabel, 0, 3, GridBagConstraints.EAST);
+        addComp(form, minFreqField, 1, 3, GridBagConstraints.WEST);
 
         JPanel buttons = new JPanel();
         JButton addButton = new JButton(Language.ADD_SERVER.SUBMIT);
@@ -59,10 +64,20 @@ public class AddServer extends JDialog implements GUI {
         this.setLocationRelativeTo(owner);
 
         addButton.addActionListener(e -> {
+            // an empty frequency takes the default, anything out of range is turned down rather than replaced
+            int frequency = parseSeconds(freqField.getText(), Constants.DEFAULT_FREQUENCY);
+            if(frequency < Constants.MIN_FREQUENCY || frequency > Constants.MAX_FREQUENCY) {
+                showError(String.format(Language.ADD_SERVER.FREQUENCY_ERROR_FORMAT, Constants.MIN_FREQUENCY, Constants.MAX_FREQUENCY));
+                return;
+            }
+            int minFrequency = parseSeconds(minFreqField.getText(), 0);
+            if(minFrequency != 0 && (minFrequency < Constants.MIN_FREQUENCY || minFrequency >= frequency)) {
+                showError(String.format(Language.ADD_SERVER.MIN_FREQUENCY_ERROR_FORMAT, Constants.MIN_FREQUENCY));
+                return;
+            }
             this.close();
-            // TODO: validate input
-            int frequency = (Integer.parseInt(freqField.getText()) > 0) ? Integer.parseInt(freqField.getText()) : Constants.DEFAULT_FREQUENCY;
             ServerInfo info = new ServerInfo(herald, hostField.getText().trim(), nameField.getText().trim(), true, frequency);
+            if(minFrequency != 0) info.setAdaptive(minFrequency);
             if(info.equals(Constants.ERROR)) info = null;
             herald.addServer(info);
         });
@@ -70,6 +85,20 @@ public class AddServer extends JDialog implements GUI {
 
     /* Private Methods */
 
+    // The field's whole number of seconds, the fallback if it's empty, -1 if it isn't a number
+    private static int parseSeconds(String text, int fallback){
+        if(text.trim().isEmpty()) return fallback;
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void showError(String message){
+        JOptionPane.showMessageDialog(this, message, Language.ADD_SERVER.INVALID_TITLE, JOptionPane.ERROR_MESSAGE);
+    }
+
     /**
      * @author Derek Banas
      * @see "http://www.newthinktank.com/2012/03/java-video-tutorial-30/"
@@ -95,6 +124,7 @@ public class AddServer extends JDialog implements GUI {
         hostField.setText("");
         nameField.setText("");
         freqField.setText("");
+        minFreqField.setText("");
         SwingUtilities.invokeLater(() -> this.setVisible(true));
     }
 
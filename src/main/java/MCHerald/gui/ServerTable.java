@@ -14,6 +14,8 @@ import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableCellRenderer;
 import java.awt.*;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 public class ServerTable extends JFrame implements GUI {
 
@@ -135,7 +137,7 @@ public class ServerTable extends JFrame implements GUI {
             model = new DefaultTableModel(data, Language.TABLE.COLUMN_NAMES){
                 @Override
                 public boolean isCellEditable(int row, int col){
-                    return col != Constants.COLUMNS.ONLINE_OUT_OF_MAX;
+                    return col != Constants.COLUMNS.ONLINE_OUT_OF_MAX && col != Constants.COLUMNS.LATENCY && col != Constants.COLUMNS.STATUS;
                 }
             };
 
@@ -160,9 +162,17 @@ public class ServerTable extends JFrame implements GUI {
             });
 
             table.setDefaultRenderer(String.class, new DefaultTableCellRenderer(){
+                // Icons of the cached favicons, dropped along with the favicon once the FaviconCache evicts it
+                private final Map<Image, Icon> icons = new WeakHashMap<>();
+
                 @Override
                 public Component getTableCellRendererComponent(JTable table,Object value,boolean isSelected,boolean hasFocus,int row,int column) {
                     Component c = super.getTableCellRendererComponent(table,value,isSelected,hasFocus,row,column);
+                    if(column == Constants.COLUMNS.NAME){
+                        ServerInfo server = herald.getServerList().get(table.getModel().getValueAt(row, Constants.COLUMNS.UUID).toString());
+                        Image favicon = (server == null) ? null : server.getFavicon();
+                        setIcon((favicon == null) ? null : icons.computeIfAbsent(favicon, ImageIcon::new));
+                    } else setIcon(null);
                     c.setForeground(
                             column == Constants.COLUMNS.IP && table.getModel().getValueAt(row, Constants.COLUMNS.ONLINE_OUT_OF_MAX).toString().equals(Language.TABLE.PLAYER_COUNT_ERROR) ?
                                     Color.RED :
@@ -233,6 +243,8 @@ public class ServerTable extends JFrame implements GUI {
                 table.getColumnModel().getColumn(Constants.COLUMNS.IP).setPreferredWidth(100);
                 table.getColumnModel().getColumn(Constants.COLUMNS.FREQUENCY).setPreferredWidth(50);
                 table.getColumnModel().getColumn(Constants.COLUMNS.ONLINE_OUT_OF_MAX).setPreferredWidth(15);
+                table.getColumnModel().getColumn(Constants.COLUMNS.LATENCY).setPreferredWidth(15);
+                table.getColumnModel().getColumn(Constants.COLUMNS.STATUS).setPreferredWidth(100);
             });
         }
     }
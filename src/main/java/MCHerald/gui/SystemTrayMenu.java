@@ -19,11 +19,14 @@ import java.util.LinkedHashMap;
 public class SystemTrayMenu implements GUI {
 
     private MCHerald herald;
-    private Menu serversMenu;
+    private Menu serversMenu, playersMenu, webhooksMenu, rulesMenu;
 
     private final SystemTray tray;
     private final TrayIcon trayIcon;
     private final HashMap<String, ServerMenuItem> serversMenuItem;
+    private final HashMap<String, CheckboxMenuItem> playersMenuItem;
+    private final HashMap<String, CheckboxMenuItem> webhooksMenuItem;
+    private final HashMap<String, CheckboxMenuItem> rulesMenuItem;
 
     public SystemTrayMenu(MCHerald herald, LinkedHashMap<String, ServerInfo> servers) throws FileNotFoundException {
         if (!SystemTray.isSupported()) throw new UnsupportedOperationException(Language.TRAY.UNSUPPORTED);
@@ -56,6 +59,15 @@ public class SystemTrayMenu implements GUI {
             i.setState(s.getState());
             serversMenuItem.put(s.getUUID(), i);
         }
+        playersMenu = new Menu(Language.TRAY.PLAYERS_LIST);
+        playersMenuItem = new HashMap<>();
+        MenuItem watchPlayerItem = new MenuItem(Language.WATCH_PLAYER.TITLE);
+        webhooksMenu = new Menu(Language.TRAY.WEBHOOKS_LIST);
+        webhooksMenuItem = new HashMap<>();
+        MenuItem addWebhookItem = new MenuItem(Language.WEBHOOK.TITLE);
+        rulesMenu = new Menu(Language.TRAY.RULES_LIST);
+        rulesMenuItem = new HashMap<>();
+        MenuItem addRuleItem = new MenuItem(Language.ALERT_RULE.TITLE);
         MenuItem addServerItem = new MenuItem(Language.ADD_SERVER.TITLE);
         MenuItem settingsItem = new MenuItem(Language.TRAY.SERVER_TABLE);
         MenuItem aboutItem = new MenuItem(Language.TRAY.ABOUT);
@@ -70,6 +82,14 @@ public class SystemTrayMenu implements GUI {
             serversMenu.addSeparator();
         }
         serversMenu.add(addServerItem);
+        popup.add(playersMenu);
+        playersMenu.add(watchPlayerItem);
+        herald.getWatchedPlayers().forEach(this::addWatchedPlayer);
+        popup.add(webhooksMenu);
+        webhooksMenu.add(addWebhookItem);
+        popup.add(rulesMenu);
+        rulesMenu.add(addRuleItem);
+        herald.getAlertRules().getRules().forEach(rule -> addAlertRule(rule.getText()));
         popup.addSeparator();
         popup.add(settingsItem);
         popup.add(aboutItem);
@@ -81,6 +101,22 @@ public class SystemTrayMenu implements GUI {
         aboutItem.addActionListener(e -> herald.openAbout());
         exitItem.addActionListener(e -> herald.shutdown());
         addServerItem.addActionListener(e -> herald.openAddServerMenu());
+        watchPlayerItem.addActionListener(e -> SwingUtilities.invokeLater(() -> {
+            String player = JOptionPane.showInputDialog(null, Language.WATCH_PLAYER.PROMPT, Language.WATCH_PLAYER.TITLE, JOptionPane.PLAIN_MESSAGE);
+            if(player != null) herald.watchPlayer(player);
+        }));
+        addWebhookItem.addActionListener(e -> SwingUtilities.invokeLater(() -> {
+            String url = JOptionPane.showInputDialog(null, Language.WEBHOOK.PROMPT, Language.WEBHOOK.TITLE, JOptionPane.PLAIN_MESSAGE);
+            if(url == null || url.trim().isEmpty() || herald.addWebhook(url)) return;
+            JOptionPane.showMessageDialog(null, String.format(Language.WEBHOOK.INVALID_FORMAT, url.trim()),
+                    Language.WEBHOOK.TITLE, JOptionPane.ERROR_MESSAGE);
+        }));
+        addRuleItem.addActionListener(e -> SwingUtilities.invokeLater(() -> {
+            String rule = JOptionPane.showInputDialog(null, Language.ALERT_RULE.PROMPT, Language.ALERT_RULE.TITLE, JOptionPane.PLAIN_MESSAGE);
+            if(rule == null || rule.trim().isEmpty() || herald.addAlertRule(rule)) return;
+            JOptionPane.showMessageDialog(null, String.format(Language.ALERT_RULE.INVALID_FORMAT, rule.trim()),
+                    Language.ALERT_RULE.TITLE, JOptionPane.ERROR_MESSAGE);
+        }));
 
         for (CheckboxMenuItem i : serversMenuItem.values()) {
             i.addItemListener(new ServerToggle());
@@ -136,8 +172,60 @@ public class SystemTrayMenu implements GUI {
         }
     }
 
+    // Unchecking a watched player stops watching it.
+    public void addWatchedPlayer(String player){
+        addListItem(playersMenu, playersMenuItem, player, () -> herald.unwatchPlayer(player));
+    }
+
+    public void removeWatchedPlayer(String player){
+        removeListItem(playersMenu, playersMenuItem, player);
+    }
+
+    // Unchecking a webhook stops POSTing to it.
+    public void addWebhook(String url){
+        addListItem(webhooksMenu, webhooksMenuItem, url, () -> herald.removeWebhook(url));
+    }
+
+    public void removeWebhook(String url){
+        removeListItem(webhooksMenu, webhooksMenuItem, url);
+    }
+
+    // Unchecking a rule removes it.
+    public void addAlertRule(String rule){
+        addListItem(rulesMenu, rulesMenuItem, rule, () -> herald.removeAlertRule(rule));
+    }
+
+    public void removeAlertRule(String rule){
+        removeListItem(rulesMenu, rulesMenuItem, rule);
+    }
+
     /* Private Methods */
 
+    // Checked item above the menu's last one (ie "Watch Player"), with a separator between them
+    private void addListItem(Menu menu, HashMap<String, CheckboxMenuItem> items, String label, Runnable onUncheck){
+        if(items.containsKey(label)) return;
+        CheckboxMenuItem item = new CheckboxMenuItem(label, true);
+        // if the only item is the last one, ie an empty list
+        if(menu.getItemCount() == 1){
+            menu.insert(item, 0);
+            menu.insertSeparator(1);
+        } else {
+            menu.insert(item, menu.getItemCount()-2);
+        }
+        item.addItemListener(e -> onUncheck.run());
+        items.put(label, item);
+    }
+
+    private void removeListItem(Menu menu, HashMap<String, CheckboxMenuItem> items, String label){
+        CheckboxMenuItem item = items.remove(label);
+        if(item == null) return;
+        menu.remove(item);
+        // if the only items are the last one and the separator, ie an empty list
+        if(menu.getItemCount() == 2){
+            menu.remove(0);
+        }
+    }
+
     private int getMenuItemIndex(String uuid){
         CheckboxMenuItem item = serversMenuItem.get(uuid);
         for(int i = 0; i < serversMenu.getItemCount(); i++){
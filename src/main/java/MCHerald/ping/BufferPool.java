@@ -0,0 +1,53 @@
+package MCHerald.ping;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed-size pool of reusable ByteBuffers, so the ping path doesn't allocate a fresh buffer per connection.
+ * Buffers of a foreign size (ie one-off grown buffers) are silently dropped on release.
+ */
+class BufferPool {
+    private final int bufferSize, maxPooled;
+    private final boolean direct;
+    private final ConcurrentLinkedQueue<ByteBuffer> free;
+    private final AtomicInteger pooled;
+
+    BufferPool(int bufferSize, int maxPooled, boolean direct){
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.direct = direct;
+        this.free = new ConcurrentLinkedQueue<>();
+        this.pooled = new AtomicInteger();
+    }
+
+    /**
+     * @return A cleared buffer of this pool's size, either recycled or newly allocated
+     */
+    ByteBuffer acquire(){
+        ByteBuffer buffer = free.poll();
+        if(buffer == null)
+            return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Hands a buffer back to the pool, the caller must not touch it afterwards.
+     * @param buffer The buffer to be recycled, may be null
+     */
+    void release(ByteBuffer buffer){
+        if(buffer == null || buffer.capacity() != bufferSize || buffer.isDirect() != direct) return;
+        if(pooled.incrementAndGet() > maxPooled){
+            pooled.decrementAndGet();
+            return;
+        }
+        free.offer(buffer);
+    }
+
+    int getBufferSize(){
+        return this.bufferSize;
+    }
+}
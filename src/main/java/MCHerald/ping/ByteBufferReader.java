@@ -0,0 +1,43 @@
+package MCHerald.ping;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes UTF-8 straight out of a ByteBuffer, so a JSON payload can be streamed without first copying it into a String.
+ */
+class ByteBufferReader extends Reader {
+    private final ByteBuffer in;
+    private final CharsetDecoder decoder;
+    private boolean isFlushed;
+
+    ByteBufferReader(ByteBuffer in){
+        this.in = in;
+        this.decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if(len == 0) return 0;
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        CoderResult result = decoder.decode(in, out, true);
+        if(result.isError()) result.throwException();
+        if(!in.hasRemaining() && !isFlushed && !result.isOverflow()){
+            decoder.flush(out);
+            isFlushed = true;
+        }
+        int read = out.position() - off;
+        return (read == 0 && !in.hasRemaining()) ? -1 : read;
+    }
+
+    @Override
+    public void close() {}
+}
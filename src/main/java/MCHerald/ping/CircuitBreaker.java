@@ -0,0 +1,150 @@
+package MCHerald.ping;
+
+import com.google.gson.JsonParseException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-server failure tracking, so unreachable hosts stop costing a full time-out every tick.
+ * CLOSED pings as usual. After FAILURE_THRESHOLD failures in a row it goes OPEN and no ping is sent
+ * until the back-off (doubling per failure, up to a ceiling) runs out; then one HALF_OPEN probe decides
+ * whether to close again or re-open with a longer back-off.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    public enum FailureType {
+        DNS("unknown host"),
+        REFUSED("refused"),
+        TIMEOUT("timed out"),
+        PROTOCOL("bad response"),
+        UNKNOWN("error");
+
+        private final String description;
+
+        FailureType(String description){
+            this.description = description;
+        }
+
+        @Override
+        public String toString(){
+            return this.description;
+        }
+
+        /**
+         * @param e The exception a ping failed with, possibly wrapped by a future
+         * @return What kind of failure it was
+         */
+        public static FailureType classify(Throwable e){
+            while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null)
+                e = e.getCause();
+            if(e instanceof UnresolvedAddressException || e instanceof UnknownHostException) return DNS;
+            if(e instanceof ConnectException || e instanceof NoRouteToHostException) return REFUSED;
+            if(e instanceof SocketTimeoutException) return TIMEOUT;
+            if(e instanceof EOFException || e instanceof JsonParseException || e instanceof IllegalStateException) return PROTOCOL;
+            if(e instanceof IOException && e.getMessage() != null
+                    && (e.getMessage().startsWith("Invalid") || e.getMessage().startsWith("VarInt"))) return PROTOCOL;
+            return UNKNOWN;
+        }
+    }
+
+    static final int FAILURE_THRESHOLD = 2;
+    static final long BASE_BACKOFF = 30_000;       // ms
+    static final long MAX_BACKOFF = 30 * 60_000;   // ms
+
+    private final LongSupplier clock;
+    private State state = State.CLOSED;
+    private FailureType lastFailure;
+    private int consecutiveFailures;
+    private long retryAt; // ns, of the monotonic clock, so a wall clock change can't hold a probe back
+
+    public CircuitBreaker(){
+        this(System::nanoTime);
+    }
+
+    /**
+     * @param clock Monotonic clock, in ns
+     */
+    CircuitBreaker(LongSupplier clock){
+        this.clock = clock;
+    }
+
+    /* Public Methods */
+
+    /**
+     * Called before a scheduled ping; an OPEN breaker whose back-off ran out lets exactly one probe through.
+     * @return True if the ping should go out
+     */
+    public synchronized boolean allowRequest(){
+        switch (state){
+            case CLOSED:
+                return true;
+            case OPEN:
+                if(clock.getAsLong() - retryAt < 0) return false;
+                state = State.HALF_OPEN;
+                return true;
+            default: // a probe is already out
+                return false;
+        }
+    }
+
+    public synchronized void recordSuccess(){
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        lastFailure = null;
+    }
+
+    public synchronized void recordFailure(Throwable e){
+        lastFailure = FailureType.classify(e);
+        consecutiveFailures++;
+        if(state == State.HALF_OPEN || consecutiveFailures >= FAILURE_THRESHOLD){
+            int exponent = Math.min(consecutiveFailures - FAILURE_THRESHOLD, 16);
+            retryAt = clock.getAsLong() + TimeUnit.MILLISECONDS.toNanos(Math.min(BASE_BACKOFF << Math.max(0, exponent), MAX_BACKOFF));
+            state = State.OPEN;
+        }
+    }
+
+    /**
+     * @return Milliseconds until an OPEN breaker allows its probe, 0 otherwise
+     */
+    public synchronized long getRetryDelay(){
+        if(state != State.OPEN) return 0;
+        long remaining = retryAt - clock.getAsLong();
+        return (remaining <= 0) ? 0 : (remaining + 999_999) / 1_000_000; // rounded up, so a tick waiting it out isn't early
+    }
+
+    public synchronized State getState(){
+        return this.state;
+    }
+
+    public synchronized FailureType getLastFailure(){
+        return this.lastFailure;
+    }
+
+    public synchronized int getConsecutiveFailures(){
+        return this.consecutiveFailures;
+    }
+
+    @Override
+    public synchronized String toString(){
+        switch (state){
+            case OPEN:
+                return "Down (" + lastFailure + "), retry in " + ((getRetryDelay() + 999) / 1000) + "s";
+            case HALF_OPEN:
+                return "Retrying (" + lastFailure + ")";
+            default:
+                return (lastFailure == null) ? "OK" : "Unstable (" + lastFailure + ")";
+        }
+    }
+}
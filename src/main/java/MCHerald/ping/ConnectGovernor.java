@@ -0,0 +1,151 @@
+package MCHerald.ping;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Budget of the {@link PingEngine}'s outgoing connections, so a sweep of a large list doesn't burst
+ * hundreds of SYNs (and TIME_WAIT sockets) through the NAT at once.
+ * A token bucket limits the connect rate (every connect attempt takes a token), a global cap bounds the
+ * sessions in flight, and an optional cap bounds them per destination subnet (/24 for IPv4, /48 for IPv6).
+ * Only the engine's event loop calls into it; the counters may be read from any thread.
+ */
+public class ConnectGovernor {
+
+    private final double connectsPerSecond;
+    private final int burst;
+    private final int maxInFlight;
+    private final int maxPerSubnet; // 0 for no subnet cap
+
+    private final HashMap<Long, Integer> subnets; // subnet -> sessions in flight
+    private double tokens;
+    private long lastRefill;
+
+    private volatile int inFlight;
+    private volatile long connects, throttled;
+
+    /**
+     * @param connectsPerSecond Sustained connect attempts per second
+     * @param burst Connect attempts allowed back to back after an idle period
+     * @param maxInFlight Sessions connecting or talking at once
+     * @param maxPerSubnet Sessions at once towards one subnet, 0 for no limit
+     */
+    public ConnectGovernor(double connectsPerSecond, int burst, int maxInFlight, int maxPerSubnet){
+        if(connectsPerSecond <= 0 || burst < 1 || maxInFlight < 1 || maxPerSubnet < 0)
+            throw new IllegalArgumentException("Invalid connect budget");
+        this.connectsPerSecond = connectsPerSecond;
+        this.burst = burst;
+        this.maxInFlight = maxInFlight;
+        this.maxPerSubnet = maxPerSubnet;
+        this.subnets = new HashMap<>();
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    // No limits worth mentioning, ie for tools and tests
+    public static ConnectGovernor unlimited(){
+        return new ConnectGovernor(1_000_000, 1_000_000, Integer.MAX_VALUE, 0);
+    }
+
+    /* Public Methods */
+
+    /**
+     * Admits a session if both caps have room and a token is left for its first connect; the token is taken by {@link #takeToken()}.
+     * @param subnet The session's {@link #subnetOf(InetSocketAddress)}
+     * @return True if the session now counts as in flight, and must be {@link #release(long) released}
+     */
+    boolean tryAdmit(long subnet){
+        if(inFlight >= maxInFlight || !hasToken()) return false;
+        Integer count = subnets.get(subnet);
+        if(maxPerSubnet > 0 && count != null && count >= maxPerSubnet) return false;
+        subnets.put(subnet, (count == null) ? 1 : count + 1);
+        inFlight++;
+        return true;
+    }
+
+    void release(long subnet){
+        Integer count = subnets.get(subnet);
+        if(count == null) return;
+        if(count <= 1) subnets.remove(subnet);
+        else subnets.put(subnet, count - 1);
+        inFlight--;
+    }
+
+    /**
+     * @return True if the global cap alone keeps sessions waiting, so no other waiting session can be admitted either
+     */
+    boolean isSaturated(){
+        return inFlight >= maxInFlight || !hasToken();
+    }
+
+    /**
+     * Takes the token of one connect attempt.
+     * @return 0 if taken, otherwise the nanoseconds until a token will be there
+     */
+    long takeToken(){
+        refill();
+        if(tokens >= 1){
+            tokens--;
+            connects++;
+            return 0;
+        }
+        throttled++;
+        return nanosUntilToken();
+    }
+
+    long nanosUntilToken(){
+        refill();
+        return (tokens >= 1) ? 0 : (long) Math.ceil((1 - tokens) / connectsPerSecond * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * @return The subnet the address belongs to (/24 for IPv4, /48 for IPv6) packed in a long
+     */
+    static long subnetOf(InetSocketAddress address){
+        InetAddress ip = address.getAddress();
+        if(ip == null) return -1;
+        byte[] bytes = ip.getAddress();
+        int length = (bytes.length == 4) ? 3 : 6;
+        long subnet = bytes.length; // tells the families apart
+        for(int i = 0; i < length; i++) subnet = (subnet << 8) | (bytes[i] & 0xFF);
+        return subnet;
+    }
+
+    /* Private Methods */
+
+    private boolean hasToken(){
+        refill();
+        return tokens >= 1;
+    }
+
+    private void refill(){
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * connectsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefill = now;
+    }
+
+    /* Getters */
+
+    // Sessions currently admitted
+    public int getInFlight(){
+        return this.inFlight;
+    }
+
+    // Connect attempts made so far
+    public long getConnects(){
+        return this.connects;
+    }
+
+    // Connect attempts that had to wait for a token
+    public long getThrottled(){
+        return this.throttled;
+    }
+
+    @Override
+    public String toString(){
+        return "ConnectGovernor <in flight: " + getInFlight() + "/" + maxInFlight + ", connects: " + getConnects()
+                + ", throttled: " + getThrottled() + ", rate: " + connectsPerSecond + "/s>";
+    }
+}
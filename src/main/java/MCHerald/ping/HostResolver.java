@@ -0,0 +1,287 @@
+package MCHerald.ping;
+
+import MCHerald.util.Shuttable;
+
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Asynchronous, caching resolver of server hosts, so no ping ever blocks on DNS.
+ * A host without an explicit port is first looked up as a "_minecraft._tcp" SRV record (through JNDI DNS),
+ * then the target's A / AAAA records are resolved. Results are cached for TTL ms, failures for NEGATIVE_TTL ms;
+ * an expired positive entry is still served while it's refreshed in the background.
+ * JNDI doesn't expose record TTLs, hence the fixed ones.
+ */
+public class HostResolver implements Shuttable {
+
+    public static final long TTL = 5 * 60_000;
+    public static final long NEGATIVE_TTL = 60_000;
+
+    private final String dnsServer; // null for the system's resolver
+    private final int defaultPort;
+    private final ConcurrentHashMap<String, Entry> cache;
+    private final ExecutorService lookupExecutor;
+    private final LongSupplier clock;
+
+    /**
+     * @param dnsServer JNDI DNS URL of the server to query (ie "dns://127.0.0.1:5353" for a local stub),
+     *                  or null to use the system's configuration and name service
+     * @param defaultPort Port used when the host has neither an explicit port nor an SRV record
+     */
+    public HostResolver(String dnsServer, int defaultPort){
+        this(dnsServer, defaultPort, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock Wall clock, in ms
+     */
+    HostResolver(String dnsServer, int defaultPort, LongSupplier clock){
+        this.dnsServer = dnsServer;
+        this.defaultPort = defaultPort;
+        this.cache = new ConcurrentHashMap<>();
+        this.lookupExecutor = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "HostResolver");
+            t.setDaemon(true);
+            return t;
+        });
+        this.clock = clock;
+    }
+
+    /* Public Methods */
+
+    /**
+     * Resolves "host", "host:port" or "[v6]:port", from the cache when possible.
+     * @param host The host as entered by the user
+     * @return Future of the resolution, failed with an UnknownHostException if the host doesn't exist
+     */
+    public CompletableFuture<Resolution> resolve(String host){
+        String key = host.trim().toLowerCase(Locale.ROOT);
+        long now = clock.getAsLong();
+        Entry entry = cache.get(key);
+
+        if(entry != null && now < entry.expiresAt) return entry.future;
+        if(entry != null && entry.isPositive()){
+            // stale-while-revalidate: serve the old addresses, refresh once in the background
+            // (a failed refresh keeps the old addresses, and is retried after NEGATIVE_TTL)
+            if(entry.isRefreshing.compareAndSet(false, true))
+                lookup(key).whenComplete((resolution, e) -> {
+                    if(e == null) {
+                        cache.replace(key, entry, new Entry(resolution, null, clock.getAsLong()));
+                        return;
+                    }
+                    entry.expiresAt = clock.getAsLong() + NEGATIVE_TTL;
+                    entry.isRefreshing.set(false);
+                });
+            return entry.future;
+        }
+
+        Entry fresh = new Entry();
+        if(entry == null ? cache.putIfAbsent(key, fresh) != null : !cache.replace(key, entry, fresh))
+            return resolve(host); // raced with another caller, use theirs
+        lookup(key).whenComplete((resolution, e) -> fresh.complete(resolution, e, clock.getAsLong()));
+        return fresh.future;
+    }
+
+    /**
+     * Drops the cached resolution of a host, ie after the user edited it.
+     */
+    public void invalidate(String host){
+        cache.remove(host.trim().toLowerCase(Locale.ROOT));
+    }
+
+    /* Private Methods */
+
+    private CompletableFuture<Resolution> lookup(String host){
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return resolveNow(host);
+            } catch (UnknownHostException e) {
+                throw new CompletionException(e);
+            }
+        }, lookupExecutor);
+    }
+
+    // Blocking, only ever run on the lookup executor.
+    private Resolution resolveNow(String host) throws UnknownHostException {
+        String name = host;
+        int port = -1;
+        int colon = host.lastIndexOf(':');
+        if(host.startsWith("[")){ // [v6 literal]:port
+            int end = host.indexOf(']');
+            if(end < 0) throw new UnknownHostException(host);
+            name = host.substring(1, end);
+            if(end + 1 < host.length() && host.charAt(end + 1) == ':') port = parsePort(host.substring(end + 2), host);
+        } else if(colon > 0 && colon == host.indexOf(':')){ // a single colon, so not a bare v6 literal
+            name = host.substring(0, colon);
+            port = parsePort(host.substring(colon + 1), host);
+        }
+
+        if(port < 0 && !isLiteral(name)){
+            String[] srv = lookupSrv(name);
+            if(srv != null){
+                name = srv[0];
+                port = parsePort(srv[1], host);
+            }
+        }
+        if(port < 0) port = defaultPort;
+
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for(InetAddress address : lookupAddresses(name)) addresses.add(new InetSocketAddress(address, port));
+        if(addresses.isEmpty()) throw new UnknownHostException(host);
+        return new Resolution(name, port, addresses);
+    }
+
+    /**
+     * @return {target, port} of the best (lowest priority, then highest weight) SRV record, or null if there is none
+     */
+    private String[] lookupSrv(String name){
+        try {
+            Attribute records = lookupRecords("_minecraft._tcp." + name, "SRV").get("SRV");
+            if(records == null) return null;
+            String[] best = null;
+            long bestPriority = Long.MAX_VALUE, bestWeight = -1;
+            NamingEnumeration<?> values = records.getAll();
+            while (values.hasMore()){
+                String[] fields = values.next().toString().trim().split("\\s+"); // priority weight port target
+                if(fields.length < 4) continue;
+                long priority = Long.parseLong(fields[0]), weight = Long.parseLong(fields[1]);
+                if(priority < bestPriority || (priority == bestPriority && weight > bestWeight)){
+                    bestPriority = priority;
+                    bestWeight = weight;
+                    String target = fields[3].endsWith(".") ? fields[3].substring(0, fields[3].length() - 1) : fields[3];
+                    best = new String[]{target, fields[2]};
+                }
+            }
+            return best;
+        } catch (NamingException | NumberFormatException e) {
+            return null; // no (usable) SRV record, fall back to the plain host
+        }
+    }
+
+    private InetAddress[] lookupAddresses(String name) throws UnknownHostException {
+        if(dnsServer == null || isLiteral(name)) return InetAddress.getAllByName(name);
+        try {
+            List<InetAddress> addresses = new ArrayList<>();
+            Attributes records = lookupRecords(name, "A", "AAAA");
+            for(String type : new String[]{"AAAA", "A"}){
+                Attribute record = records.get(type);
+                if(record == null) continue;
+                NamingEnumeration<?> values = record.getAll();
+                while (values.hasMore())
+                    addresses.add(InetAddress.getByAddress(name, InetAddress.getByName(values.next().toString()).getAddress()));
+            }
+            return addresses.toArray(new InetAddress[0]);
+        } catch (NameNotFoundException e) {
+            throw new UnknownHostException(name);
+        } catch (NamingException e) {
+            UnknownHostException unknown = new UnknownHostException(name + ": " + e.getMessage());
+            unknown.initCause(e);
+            throw unknown;
+        }
+    }
+
+    private Attributes lookupRecords(String name, String... types) throws NamingException {
+        Hashtable<String, String> env = new Hashtable<>();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
+        env.put(Context.PROVIDER_URL, (dnsServer == null) ? "dns:" : dnsServer);
+        env.put("com.sun.jndi.dns.timeout.initial", "1000");
+        env.put("com.sun.jndi.dns.timeout.retries", "2");
+        DirContext context = new InitialDirContext(env);
+        try {
+            return context.getAttributes(name, types);
+        } finally {
+            context.close();
+        }
+    }
+
+    private static boolean isLiteral(String name){
+        return name.indexOf(':') >= 0 || name.matches("\\d{1,3}(\\.\\d{1,3}){3}");
+    }
+
+    private static int parsePort(String port, String host) throws UnknownHostException {
+        try {
+            int value = Integer.parseInt(port.trim());
+            if(value > 0 && value <= 0xFFFF) return value;
+        } catch (NumberFormatException ignore) {}
+        throw new UnknownHostException("Invalid port: " + host);
+    }
+
+    /**
+     * Where a host currently lives: the (SRV target) name sent in the handshake, its port and every address found.
+     */
+    public static class Resolution {
+        private final String hostName;
+        private final int port;
+        private final List<InetSocketAddress> addresses;
+
+        Resolution(String hostName, int port, List<InetSocketAddress> addresses){
+            this.hostName = hostName;
+            this.port = port;
+            this.addresses = Collections.unmodifiableList(addresses);
+        }
+
+        public String getHostName(){
+            return this.hostName;
+        }
+
+        public int getPort(){
+            return this.port;
+        }
+
+        public List<InetSocketAddress> getAddresses(){
+            return this.addresses;
+        }
+
+        @Override
+        public String toString(){
+            return hostName + ":" + port + " " + addresses;
+        }
+    }
+
+    private static class Entry {
+        final CompletableFuture<Resolution> future;
+        final AtomicBoolean isRefreshing;
+        volatile long expiresAt; // Long.MAX_VALUE while the lookup is running
+
+        Entry(){
+            this.future = new CompletableFuture<>();
+            this.isRefreshing = new AtomicBoolean(false);
+            this.expiresAt = Long.MAX_VALUE;
+        }
+
+        Entry(Resolution resolution, Throwable e, long now){
+            this();
+            complete(resolution, e, now);
+        }
+
+        void complete(Resolution resolution, Throwable e, long now){
+            expiresAt = now + ((e == null) ? TTL : NEGATIVE_TTL);
+            if(e == null) future.complete(resolution);
+            else future.completeExceptionally((e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e);
+        }
+
+        boolean isPositive(){
+            return future.isDone() && !future.isCompletedExceptionally();
+        }
+    }
+
+    /* Contract Methods */
+
+    @Override
+    public void shutdown(){
+        this.lookupExecutor.shutdownNow();
+    }
+}
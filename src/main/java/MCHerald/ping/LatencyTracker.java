@@ -0,0 +1,81 @@
+package MCHerald.ping;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-server latency statistics, in constant memory.
+ * Keeps an EWMA of the ping round-trip (shown to the user) and a decaying log-scale histogram of whole
+ * exchange durations, whose p99 drives the time-out, so fast servers fail fast and slow ones aren't cut off.
+ */
+public class LatencyTracker {
+
+    private static final double ALPHA = 0.125;  // same smoothing as TCP's SRTT
+    private static final int MIN_SAMPLES = 8;   // below this, keep the default time-out
+    private static final int TIMEOUT_FACTOR = 3;
+    private static final int DECAY_AT = 256;    // halve every bucket once this many samples piled up
+
+    // bucket i counts durations in [2^(i-1), 2^i) ms, bucket 0 anything under a millisecond
+    private static final int BUCKETS = 16;
+
+    private final int[] histogram;
+    private int samples;
+    private double smoothedRtt; // ms, -1 until the first sample
+
+    public LatencyTracker(){
+        this.histogram = new int[BUCKETS];
+        this.smoothedRtt = -1;
+    }
+
+    /* Public Methods */
+
+    /**
+     * @param rttNanos Time from sending the ping packet to its pong
+     * @param exchangeNanos Time of the whole exchange, connect included
+     */
+    public synchronized void record(long rttNanos, long exchangeNanos){
+        double rtt = rttNanos / 1_000_000d;
+        smoothedRtt = (smoothedRtt < 0) ? rtt : smoothedRtt + ALPHA * (rtt - smoothedRtt);
+        add(TimeUnit.NANOSECONDS.toMillis(exchangeNanos));
+    }
+
+    /**
+     * A timed-out ping counts as an exchange as long as the time-out, so a server that got slower
+     * pushes its own time-out back up instead of failing over and over.
+     * @param timeoutMillis The time-out the ping ran out of
+     */
+    public synchronized void recordTimeout(int timeoutMillis){
+        add(timeoutMillis);
+    }
+
+    /**
+     * @param floor Lowest time-out handed out, in ms
+     * @param ceiling Highest time-out handed out, and the default while there is too little data, in ms
+     * @return p99 of the exchange duration times TIMEOUT_FACTOR, clamped to [floor, ceiling]
+     */
+    public synchronized int getTimeout(int floor, int ceiling){
+        if(samples < MIN_SAMPLES) return ceiling;
+        int rank = (int) Math.ceil(samples * 0.99), seen = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            seen += histogram[i];
+            if(seen >= rank) return (int) Math.max(floor, Math.min((1L << i) * TIMEOUT_FACTOR, ceiling));
+        }
+        return ceiling;
+    }
+
+    /**
+     * @return Smoothed round-trip in ms, or -1 if the server never answered a ping
+     */
+    public synchronized long getLatency(){
+        return Math.round(smoothedRtt);
+    }
+
+    /* Private Methods */
+
+    private void add(long millis){
+        int bucket = (millis <= 0) ? 0 : Math.min(64 - Long.numberOfLeadingZeros(millis), BUCKETS - 1);
+        histogram[bucket]++;
+        if(++samples < DECAY_AT) return;
+        samples = 0;
+        for(int i = 0; i < BUCKETS; i++) samples += (histogram[i] >>= 1);
+    }
+}
@@ -0,0 +1,207 @@
+package MCHerald.ping;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Allocation-free encoding / decoding of the server list ping protocol, straight on ByteBuffers.
+ * The handshake + status request only depends on the host, so it is built once and cached per host;
+ * the least recently used frames are evicted past MAX_FRAMES.
+ */
+public class PacketCodec {
+
+    public static final int PROTOCOL_VERSION = 4;
+    public static final int MAX_PACKET_SIZE = 2_097_151; // the protocol's cap, the largest 3 byte VarInt
+
+    static final BufferPool READ_BUFFERS = new BufferPool(32 * 1024, 256, true);
+    static final BufferPool PING_BUFFERS = new BufferPool(16, 256, false);
+    private static final int MAX_FRAMES = 1024;
+
+    // keyed by host name, not InetSocketAddress: two names behind one IP still need their own handshake
+    // access ordered, guarded by itself
+    private static final LinkedHashMap<String, ByteBuffer> statusFrames = new LinkedHashMap<String, ByteBuffer>(64, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ByteBuffer> eldest){
+            return size() > MAX_FRAMES;
+        }
+    };
+    private static final ByteBuffer LEGACY_REQUEST = ByteBuffer.wrap(new byte[]{(byte) 0xFE, 0x01}).asReadOnlyBuffer();
+
+    private PacketCodec(){}
+
+    /* Frames */
+
+    /**
+     * Returns the cached handshake + status request frame for the host, building it on first use.
+     * @param host The server the frame is addressed to
+     * @return A fresh read-only view (position 0) of the shared frame
+     */
+    public static ByteBuffer statusRequest(InetSocketAddress host){
+        return statusRequest(host, PROTOCOL_VERSION);
+    }
+
+    /**
+     * Same as {@link #statusRequest(InetSocketAddress)}, with the handshake announcing the given protocol number.
+     */
+    public static ByteBuffer statusRequest(InetSocketAddress host, int protocolVersion){
+        ByteBuffer frame;
+        synchronized (statusFrames){
+            frame = statusFrames.get(host.getHostString());
+        }
+        if(frame == null || framePort(frame) != host.getPort() || frameProtocol(frame) != protocolVersion){
+            frame = buildStatusRequest(host, protocolVersion);
+            synchronized (statusFrames){
+                statusFrames.put(host.getHostString(), frame);
+            }
+        }
+        return frame.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return A fresh view of the pre-1.7 server list ping (0xFE 0x01)
+     */
+    public static ByteBuffer legacyRequest(){
+        return LEGACY_REQUEST.duplicate();
+    }
+
+    // The port sits right before the trailing "next state" VarInt and the 2 byte status request.
+    private static int framePort(ByteBuffer frame){
+        return frame.getShort(frame.limit() - 5) & 0xFFFF;
+    }
+
+    // The protocol follows the frame's length prefix and the handshake's packet id.
+    private static int frameProtocol(ByteBuffer frame){
+        ByteBuffer view = frame.duplicate();
+        try {
+            readVarInt(view);
+            view.get();
+            return readVarInt(view);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    static ByteBuffer buildStatusRequest(InetSocketAddress host, int protocolVersion){
+        byte[] hostBytes = host.getHostString().getBytes(StandardCharsets.UTF_8);
+        int handshakeSize = 1 + varIntSize(protocolVersion) + varIntSize(hostBytes.length) + hostBytes.length + 2 + 1;
+
+        ByteBuffer frame = ByteBuffer.allocate(varIntSize(handshakeSize) + handshakeSize + 2);
+        writeVarInt(frame, handshakeSize);          // prepend size
+        frame.put((byte) 0x00);                     // packet id for handshake
+        writeVarInt(frame, protocolVersion);        // protocol version
+        writeVarInt(frame, hostBytes.length);       // host length
+        frame.put(hostBytes);                       // host string
+        frame.putShort((short) host.getPort());     // port
+        writeVarInt(frame, 1);                      // state (1 for status)
+        frame.put((byte) 0x01);                     // size is only 1
+        frame.put((byte) 0x00);                     // packet id for status request
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Writes a ping packet into the given buffer, then flips it for writing to a channel.
+     * @param out Cleared buffer of at least 10 bytes
+     * @param payload The value the server is expected to echo back
+     */
+    public static void writePing(ByteBuffer out, long payload){
+        out.put((byte) 0x09);   // size of packet
+        out.put((byte) 0x01);   // 0x01 for ping
+        out.putLong(payload);
+        out.flip();
+    }
+
+    /* VarInts */
+
+    /**
+     * Reads a VarInt from the buffer, only consuming it when every byte of it is available.
+     * @return The value, or -1 if the VarInt is incomplete
+     */
+    public static int readVarInt(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for(int i = 0, position = buffer.position(); position + i < buffer.limit(); i++){
+            byte b = buffer.get(position + i);
+            value |= (b & 0x7F) << i * 7;
+            if(i >= 5) throw new IOException("VarInt too big");
+            if((b & 0x80) != 128){
+                buffer.position(position + i + 1);
+                return value;
+            }
+        }
+        return -1;
+    }
+
+    public static void writeVarInt(ByteBuffer buffer, int value){
+        while ((value & 0xFFFFFF80) != 0){
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public static int varIntSize(int value){
+        int size = 1;
+        while ((value & 0xFFFFFF80) != 0){
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    /* Frame Parsing */
+
+    /**
+     * Slices the next complete length-prefixed frame off a flipped read buffer.
+     * On an incomplete frame the buffer's position is left untouched.
+     * @return The frame's payload as a view into the buffer, or null while more bytes are still needed
+     */
+    public static ByteBuffer nextFrame(ByteBuffer in) throws IOException {
+        int start = in.position();
+        int length = readFrameLength(in);
+        if(length == -1 || in.remaining() < length){
+            in.position(start);
+            return null;
+        }
+        ByteBuffer payload = in.slice();
+        payload.limit(length);
+        in.position(in.position() + length);
+        return payload;
+    }
+
+    /**
+     * Peeks the size of the legacy response at the head of a flipped read buffer: 0xFF, a char count, then that many
+     * UTF-16BE chars. It may be larger than the buffer (up to 128 KB), so the reader can tell whether it will ever fit.
+     * @return The response's total size in bytes, or -1 if its header is incomplete
+     */
+    public static int peekLegacySize(ByteBuffer in) throws IOException {
+        if(in.remaining() < 3) return -1;
+        if((in.get(in.position()) & 0xFF) != 0xFF) throw new IOException("Invalid packetID");
+        return 3 + 2 * (in.getShort(in.position() + 1) & 0xFFFF);
+    }
+
+    /**
+     * Peeks the declared length of the next frame, so the reader can tell whether it will ever fit its buffer.
+     * @return The frame's total size including its prefix, or -1 if the prefix itself is incomplete
+     * @throws IOException If the length is negative or past MAX_PACKET_SIZE
+     */
+    public static int peekFrameSize(ByteBuffer in) throws IOException {
+        int start = in.position();
+        int length = readFrameLength(in);
+        int prefix = in.position() - start;
+        in.position(start);
+        return (length == -1) ? -1 : prefix + length;
+    }
+
+    // A frame's length prefix, -1 while incomplete; the server's word for it is checked before anything is sized by it.
+    private static int readFrameLength(ByteBuffer in) throws IOException {
+        int start = in.position();
+        int length = readVarInt(in);
+        if(in.position() == start) return -1;
+        if(length < 0 || length > MAX_PACKET_SIZE) throw new IOException("Frame too large");
+        return length;
+    }
+}
@@ -5,170 +5,228 @@ import MCHerald.util.Constants;
 import MCHerald.util.ServerInfo;
 import MCHerald.util.Shuttable;
 
-import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class PingClock implements Shuttable {
     // pings all servers on list, on a pseudo system clock fashion
 
-    // the servers have a list of changes to freq.
-    // after pingTask, accept (last/only) change on queue
-    // this accepts a waitObj, from each ServerInfo type in it's addWork()
-    // updates data on each server for that tick (minute)
-    // then calls "Update" (gui)
+    // every server sits in a timing wheel, keyed by its UUID, due after its interval (in ticks / seconds)
+    // the interval is its frequency, or shorter when the server is in adaptive mode and busy
+    // each server keeps a fixed phase within its period (from its UUID), so servers sharing a frequency are spread out
+    // each tick (second) pings the servers that came due on the one long-lived executor, then re-adds them
+    // once the whole batch completed, calls "Update" (gui)
 
-    private int nextIn;
-    private LinkedList<Packet> updatingQueue;
-    private Timer updateHandler;
+    private final TimingWheel<ServerInfo> wheel;
+    private final MCHerald herald;
+    private final Timer updateHandler;
+    private final ThreadPoolExecutor pingExecutor;
+    private final long startTime;
 
-    private static final int MINUTE = 1000 * 60;
+    private final Set<String> inFlight; // UUIDs of servers with a ping still running
+    private final AtomicLong overruns, deferrals, lastBatchMillis;
 
-    public PingClock(MCHerald herald){
-        this.nextIn = 0;
-        this.updatingQueue = new LinkedList<>();
+    private static final int TICK = 1000;
+
+    /**
+     * @param herald Notified once every batch completed
+     * @param pingThreads Size of the ping executor, which lives as long as the clock
+     * @param queueCapacity Bound of the executor's queue, past it a task is put off to the next tick: it is never
+     *                      run by the submitting thread, which is the ping engine's or the resolver's
+     */
+    public PingClock(MCHerald herald, int pingThreads, int queueCapacity){
+        this.herald = herald;
+        this.wheel = new TimingWheel<>();
         this.updateHandler = new Timer(true);
+        this.startTime = System.nanoTime();
+        this.inFlight = ConcurrentHashMap.newKeySet();
+        this.overruns = new AtomicLong();
+        this.deferrals = new AtomicLong();
+        this.lastBatchMillis = new AtomicLong();
+
+        this.pingExecutor = new ThreadPoolExecutor(pingThreads, pingThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                new ThreadFactory() {
+                    private int count = 0;
+                    @Override
+                    public synchronized Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "PingWorker-" + count++);
+                        t.setDaemon(true);
+                        return t;
+                    }
+                },
+                (task, executor) -> defer(task));
 
-        this.updateHandler.schedule(new TimerTask() {
+        this.updateHandler.scheduleAtFixedRate(new TimerTask() {
             @Override
             public void run() {
-                if(!updatingQueue.isEmpty() && nextIn-- == 0){
-                    System.out.println("Running Minute-Ping:");
-                    PingClock.Packet nextPacket;
-                    /*do {
-                        System.out.println("Running Minute-Ping:");
-                        System.out.println(PingClock.this);
-                        nextPacket = PingClock.this.updatingQueue.remove();
-                        nextPacket.serverInfos.doUpdateTask();
-                        PingClock.this.add(nextPacket.serverInfos);
-
-                        nextPacket = PingClock.this.updatingQueue.peek();
-                        if(nextPacket == null) break;
-                        PingClock.this.nextIn = nextPacket.nextIn;
-                    } while (nextPacket.nextIn == 0);*/
-                    ExecutorService pool = Executors.newFixedThreadPool(10);
-                    //System.out.println(updatingQueue.peek());
-
-                    do {
-                        //nextPacket = PingClock.this.updatingQueue.remove();
-                        final Packet packet = PingClock.this.updatingQueue.remove();
-                        pool.execute(() -> {
-                            System.out.println(PingClock.this);
-                            packet.serverInfos.doUpdateTask();
-                            PingClock.this.add(packet.serverInfos);
-                        });
-                    } while (!updatingQueue.isEmpty() && updatingQueue.peek().nextIn == 0);
-
-
-                    /*while((nextPacket = updatingQueue.remove()).nextIn == 0){
-                        final Packet packet = nextPacket;
-                        pool.execute(() -> {
-                            System.out.println(PingClock.this);
-                            packet.serverInfos.doUpdateTask();
-                            PingClock.this.add(packet.serverInfos);
-                        });
-                        if(updatingQueue.peek() == null) break;
-                    }*/
-
+                // The tick is derived from the elapsed time (rounded, a run may fire a bit early), not counted,
+                // so timer drift or a late / skipped run (ie system sleep) still fires every server that came due.
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                List<ServerInfo> due = wheel.advanceTo((elapsed + TICK / 2) / TICK);
+                if(due.isEmpty()) return;
+
+                if(Constants.DEBUG) System.out.println("Running Ping tick:");
+                long batchStart = System.nanoTime();
+                List<CompletableFuture<Void>> batch = new ArrayList<>(due.size());
+                for(ServerInfo server : due){
+                    // Never overlap pings of one server, it gets re-added once its running ping completes.
+                    if(!inFlight.add(server.getUUID())){
+                        overruns.incrementAndGet();
+                        continue;
+                    }
                     try {
-                        pool.awaitTermination(Constants.SERVER_TIMEOUT, TimeUnit.MILLISECONDS);
-                    } catch (InterruptedException e) {
+                        // An open breaker (host is down) costs no worker or socket, only a re-schedule.
+                        if(!server.getBreaker().allowRequest()){
+                            inFlight.remove(server.getUUID());
+                            PingClock.this.add(server);
+                            continue;
+                        }
+                        batch.add(server.doUpdateTask(pingExecutor).whenComplete((v, e) -> reschedule(server)));
+                    } catch (RuntimeException e) {
+                        // thrown out of here it would kill the timer's thread, and every server's pings with it
                         e.printStackTrace();
+                        reschedule(server);
                     }
-                    System.out.println("Done Minute-Ping:");
-                    herald.updateServerTable();
                 }
+                if(batch.isEmpty()) return;
+
+                CompletableFuture.allOf(batch.toArray(new CompletableFuture<?>[0])).whenComplete((v, e) -> {
+                    lastBatchMillis.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batchStart));
+                    if(Constants.DEBUG) {
+                        System.out.println("Done Ping tick: " + PingClock.this);
+                        System.out.println("Ping engine: " + herald.getPingEngine().getQueued() + " queued, " + herald.getPingEngine().getGovernor());
+                    }
+                    herald.updateServerTable();
+                });
             }
-        }, 0, MINUTE); // AT: debugging prints for the pings
+        }, TICK, TICK);
     }
 
     /**
-     * Adds the given server to the updatingQueue, updating future timers as needed
-     * @param server The server to be added to the updatingQueue
+     * Schedules the given server at its next phase slot, replacing any earlier schedule of it
+     * @param server The server to be added to the wheel
      */
     public void add(ServerInfo server){
-        int nextIn = server.getFrequency();
-        ListIterator<Packet> listIterator = updatingQueue.listIterator();
-
-        for(int i = listIterator.nextIndex(); listIterator.hasNext(); listIterator.next(), i = listIterator.nextIndex()){
-            nextIn -= this.updatingQueue.get(i).nextIn;
-            if (nextIn == 0) {
-                listIterator.next();
-                if(listIterator.hasNext()){
-                    updatingQueue.add(listIterator.nextIndex(), new Packet(server, nextIn));
-                    if(!updatingQueue.isEmpty()) this.nextIn = updatingQueue.peekFirst().nextIn;
-                    System.out.println("Add server (1)");
-                    System.out.println(PingClock.this);
-                    return;
-                } else break;
-            } else if(nextIn < 0) {
-                int prevIn = nextIn + this.updatingQueue.get(i).nextIn;
-                listIterator.forEachRemaining((packet -> packet.nextIn -= prevIn));
-                this.updatingQueue.add(i, new Packet(server, prevIn));
-                if(!updatingQueue.isEmpty()) this.nextIn = updatingQueue.peekFirst().nextIn;
-                System.out.println("Add server (2)");
-                System.out.println(PingClock.this);
-                return;
-            }
-        }
-        // if nothing found yet, its more than anything in the queue so far, so add it to last with the remaining curFreq value.
-        updatingQueue.addLast(new Packet(server, nextIn));
-        if(!updatingQueue.isEmpty()) this.nextIn = updatingQueue.peekFirst().nextIn;
-        System.out.println("Add server (3)");
-        System.out.println(PingClock.this);
+        wheel.schedule(server.getUUID(), server, delayUntilNextSlot(server, wheel.getCurrentTick()));
     }
 
     /**
-     * Preforms a linear search to find and remove the given server from the updatingQueue
-     * @param server The server to be removed from the updatingQueue
+     * Cancels the given server's next ping, in constant time
+     * @param server The server to be removed from the wheel
      */
     public void remove(ServerInfo server){
-        for (Packet s: this.updatingQueue) {
-            if(s.serverInfos.equals(server)){
-                this.updatingQueue.remove(s);
-                if(!updatingQueue.isEmpty()) this.nextIn = updatingQueue.peekFirst().nextIn;
-                return;
-            }
-        }
+        wheel.cancel(server.getUUID());
     }
 
     /**
-     * First removes old server from updatingQueue,
-     * then adds back
+     * Re-schedules the server with its new frequency (and the phase that goes with it)
      * @param server The server with the frequency to be updated
      */
     public void updateFrequency(ServerInfo server){
-        this.remove(server);
         this.add(server);
     }
 
-    @Override
-    public void shutdown() {
-        this.updateHandler.cancel();
-        this.updateHandler.purge();
+    /**
+     * Pings every enabled server right away, outside of the wheel's schedule; results up to
+     * {@link PingCoalescer#FRESHNESS} old are reused, so hammering Refresh doesn't hammer the servers
+     * @param servers The servers to be refreshed
+     * @return Future completed once every ping finished, failed or not
+     */
+    public CompletableFuture<Void> refresh(Collection<ServerInfo> servers){
+        List<CompletableFuture<?>> batch = new ArrayList<>();
+        for(ServerInfo server : new ArrayList<>(servers)){
+            if(server.getState()) batch.add(server.refreshAsync(PingCoalescer.FRESHNESS).handle((response, e) -> null));
+        }
+        return CompletableFuture.allOf(batch.toArray(new CompletableFuture<?>[0]));
     }
 
-    private static class Packet {
-        ServerInfo serverInfos;
-        int nextIn;
+    // Once a server's ping is over, it's due again at its next slot, unless it was deleted meanwhile.
+    private void reschedule(ServerInfo server){
+        inFlight.remove(server.getUUID());
+        if(herald.getServerList().containsKey(server.getUUID())) add(server);
+    }
 
-        Packet(ServerInfo server, int nextIn){
-            this.serverInfos = server;
-            this.nextIn = nextIn;
-        }
+    // A task the full executor turned down is handed to it again a tick later, from the timer's thread.
+    private void defer(Runnable task){
+        if(pingExecutor.isShutdown()) return;
+        deferrals.incrementAndGet();
+        try {
+            updateHandler.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    pingExecutor.execute(task);
+                }
+            }, TICK);
+        } catch (IllegalStateException ignore) {} // the clock was shut down meanwhile
+    }
 
-        @Override
-        public String toString() {
-            return "Next: " + nextIn + " | " + serverInfos;
-        }
+    /**
+     * Ticks from now until the server's next slot, ie the next tick t where t = phase (mod interval).
+     * The phase is a deterministic hash of the UUID, so pings are spread evenly across each period,
+     * and a ping that ran long doesn't drag the server's later slots along with it.
+     * While the server's breaker is open, the first slot after its back-off is used instead.
+     */
+    static long delayUntilNextSlot(ServerInfo server, long now){
+        long period = server.getInterval();
+        long backoff = (server.getBreaker().getRetryDelay() + TICK - 1) / TICK;
+        long delay = backoff + Math.floorMod(phase(server.getUUID(), period) - (now + backoff), period);
+        return (delay == 0) ? period : delay;
+    }
+
+    // Murmur3 finalizer, so sequential UUIDs ("0", "1", ...) still land on well spread phases.
+    private static long phase(String uuid, long period){
+        long h = uuid.hashCode();
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return Math.floorMod(h, period);
+    }
+
+    /* Getters */
+
+    // Tasks waiting for a ping worker
+    public int getQueueDepth(){
+        return this.pingExecutor.getQueue().size();
+    }
+
+    public int getActiveCount(){
+        return this.pingExecutor.getActiveCount();
+    }
+
+    // Times a server came due while its previous ping was still running
+    public long getOverruns(){
+        return this.overruns.get();
+    }
+
+    // Times the executor was full and a task had to wait for the next tick, a sign the clock is lagging
+    public long getDeferrals(){
+        return this.deferrals.get();
+    }
+
+    public long getLastBatchMillis(){
+        return this.lastBatchMillis.get();
+    }
+
+    @Override
+    public void shutdown() {
+        this.updateHandler.cancel();
+        this.updateHandler.purge();
+        this.pingExecutor.shutdownNow();
     }
 
     @Override
-    @SuppressWarnings("unchecked") // Cloning of updating queue.
     public String toString(){
-        StringJoiner stringJoiner = new StringJoiner(", ", "PingClock <", ">");
-        for(Packet o : (LinkedList<Packet>) this.updatingQueue.clone()) stringJoiner.add("[" + o.nextIn + ", (" +o.serverInfos.getFrequency()+ ")]");
-        return stringJoiner.toString();
+        return "PingClock <tick: " + wheel.getCurrentTick() + ", scheduled: " + wheel.size()
+                + ", queued: " + getQueueDepth() + ", active: " + getActiveCount()
+                + ", overruns: " + getOverruns() + ", deferrals: " + getDeferrals() + ", last batch: " + getLastBatchMillis() + "ms>";
     }
 }
@@ -0,0 +1,76 @@
+package MCHerald.ping;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single-flight layer in front of the {@link PingEngine}: concurrent pings of one host (the clock's tick,
+ * the Refresh button, a freshly added server, or several entries sharing a host) share one exchange.
+ * Hosts are keyed by the resolved name and port, as sent in the handshake, so virtual hosts behind
+ * one IP are still pinged apart. A successful result is kept, and reused by callers asking for one
+ * no older than a given age (ie the manual refresh, see FRESHNESS).
+ */
+public class PingCoalescer {
+
+    public static final long FRESHNESS = 5_000; // ms, how old a result the manual refresh accepts
+
+    private final PingEngine engine;
+    private final ConcurrentHashMap<String, Flight> flights; // "host:port" -> running, or last successful, ping
+
+    public PingCoalescer(PingEngine engine){
+        this.engine = engine;
+        this.flights = new ConcurrentHashMap<>();
+    }
+
+    /* Public Methods */
+
+    /**
+     * Joins the host's running ping, reuses a fresh enough result, or starts a new ping.
+     * The time-out, previous response and latency tracker only apply when this call starts the ping.
+     * @param addresses Every resolved address of the host
+     * @param maxAge Oldest result accepted, in ms; 0 only joins a running ping
+     * @return Future of the host's status response, shared with the other callers
+     */
+    public CompletableFuture<StatusResponse> ping(List<InetSocketAddress> addresses, int timeout, StatusResponse previous,
+                                                  LatencyTracker latency, long maxAge){
+        if(addresses.isEmpty()) return engine.ping(addresses, timeout, previous, latency);
+        InetSocketAddress host = addresses.get(0);
+        String key = host.getHostString() + ":" + host.getPort();
+
+        while (true){
+            Flight flight = flights.get(key);
+            if(flight != null && (!flight.future.isDone() || flight.isFresh(maxAge)))
+                return flight.future.thenApply(response -> response); // a copy, callers can't complete the shared one
+
+            Flight fresh = new Flight();
+            if(flight == null ? flights.putIfAbsent(key, fresh) != null : !flights.replace(key, flight, fresh))
+                continue; // raced with another caller, join theirs
+            engine.ping(addresses, timeout, previous, latency).whenComplete((response, e) -> {
+                fresh.completedAt = System.currentTimeMillis();
+                if(e != null) flights.remove(key, fresh); // only successes are worth reusing
+                if(e == null) fresh.future.complete(response);
+                else fresh.future.completeExceptionally(e);
+            });
+            return fresh.future.thenApply(response -> response);
+        }
+    }
+
+    /**
+     * @return Hosts with a ping running or a result kept
+     */
+    public int size(){
+        return this.flights.size();
+    }
+
+    private static class Flight {
+        final CompletableFuture<StatusResponse> future = new CompletableFuture<>();
+        volatile long completedAt; // ms, wall clock
+
+        boolean isFresh(long maxAge){
+            return maxAge > 0 && future.isDone() && !future.isCompletedExceptionally()
+                    && System.currentTimeMillis() - completedAt <= maxAge;
+        }
+    }
+}
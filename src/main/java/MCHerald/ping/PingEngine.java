@@ -0,0 +1,532 @@
+package MCHerald.ping;
+
+import MCHerald.util.Shuttable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking server list ping of any number of servers.
+ * Every in-flight ping is a small state machine (handshake -> status -> ping) driven from one
+ * {@link Selector} event loop, so the thread count stays flat no matter how many servers are watched.
+ * Hosts that choke on the modern handshake are retried with the legacy 0xFE ping; whichever dialect
+ * (and protocol number) a host answered to is remembered, so later pings go straight to it.
+ * A host with several addresses gets "happy eyeballs" (RFC 8305): connects to alternating address families
+ * are raced, CONNECTION_ATTEMPT_DELAY apart, the first to connect wins and its family is tried first next time.
+ * Sessions wait in line until the {@link ConnectGovernor} has room for them, and every connect takes one of its tokens;
+ * a session's time-out only starts running once it's out of the line.
+ */
+public class PingEngine implements Shuttable {
+
+    static final long CONNECTION_ATTEMPT_DELAY = 250; // ms, as recommended by RFC 8305
+
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Session> pending; // handed over from callers to the event loop
+    private final PriorityQueue<Session> deadlines;      // only touched by the event loop
+    private final ConcurrentHashMap<String, Capability> capabilities; // "host:port" -> what it answered to
+    private final ConcurrentHashMap<String, Class<? extends InetAddress>> families; // "host:port" -> family that connected last
+    private final List<Session> racing;                  // sessions still connecting, only touched by the event loop
+    private final ArrayDeque<Session> waiting;           // sessions held back by the governor, only touched by the event loop
+    private final ConnectGovernor governor;
+    private volatile int queued;                         // waiting.size(), for other threads
+    private final Thread eventLoop;
+    private volatile boolean isRunning;
+
+    public PingEngine() throws IOException {
+        this(ConnectGovernor.unlimited());
+    }
+
+    /**
+     * @param governor Budget of the engine's connects and sessions in flight
+     */
+    public PingEngine(ConnectGovernor governor) throws IOException {
+        this.governor = governor;
+        this.waiting = new ArrayDeque<>();
+        this.selector = Selector.open();
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.deadlines = new PriorityQueue<>((a, b) -> Long.compare(a.deadline, b.deadline));
+        this.capabilities = new ConcurrentHashMap<>();
+        this.families = new ConcurrentHashMap<>();
+        this.racing = new ArrayList<>();
+        this.isRunning = true;
+        this.eventLoop = new Thread(this::run, "PingEngine");
+        this.eventLoop.setDaemon(true);
+        this.eventLoop.start();
+    }
+
+    /* Public Methods */
+
+    /**
+     * Queues a status ping of the given host on the event loop, never blocks the caller.
+     * @param host The server to be pinged
+     * @param timeout Milliseconds allowed for the whole exchange, connect included
+     * @param previous The server's last response; returned as is (unparsed) if the new payload is byte-identical
+     * @param latency Gets the measured round-trip of a successful ping, or the time-out of one that timed out; may be null
+     * @return Future completed with the server's response, or exceptionally on failure / time-out
+     */
+    public CompletableFuture<StatusResponse> ping(InetSocketAddress host, int timeout, StatusResponse previous, LatencyTracker latency){
+        return ping(Collections.singletonList(host), timeout, previous, latency);
+    }
+
+    /**
+     * Same as {@link #ping(InetSocketAddress, int, StatusResponse, LatencyTracker)}, racing the connects to
+     * every address of the host; the first one to connect is pinged.
+     * @param addresses Every resolved address of one host (same name and port), ie from {@link HostResolver}
+     */
+    public CompletableFuture<StatusResponse> ping(List<InetSocketAddress> addresses, int timeout, StatusResponse previous, LatencyTracker latency){
+        CompletableFuture<StatusResponse> future = new CompletableFuture<>();
+        if(!isRunning) {
+            future.completeExceptionally(new ClosedSelectorException());
+        } else if(addresses.isEmpty() || addresses.stream().anyMatch(InetSocketAddress::isUnresolved)) {
+            future.completeExceptionally(new UnresolvedAddressException());
+        } else {
+            pending.offer(new Session(addresses, timeout, previous, latency, future));
+            selector.wakeup();
+        }
+        return future;
+    }
+
+    /* Private Methods */
+
+    private void run(){
+        while (isRunning){
+            try {
+                selector.select(nextSelectTimeout());
+                registerPending();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()){
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Session session = (Session) key.attachment();
+                    try {
+                        session.handle(key);
+                    } catch (Throwable e) { // anything one server's reply sets off fails that session only
+                        session.fail(e);
+                    }
+                }
+
+                expireSessions();
+                admitWaiting(); // into the room freed by sessions done this round
+                startDueAttempts();
+            } catch (IOException | ClosedSelectorException e) {
+                e.printStackTrace();
+            } catch (Throwable e) { // the thread serves every ping, it mustn't die with one
+                e.printStackTrace();
+            }
+        }
+
+        // Fail anything still waiting so no caller blocks forever.
+        Session session;
+        while ((session = pending.poll()) != null) session.fail(new ClosedSelectorException());
+        while ((session = waiting.poll()) != null) session.fail(new ClosedSelectorException());
+        while ((session = deadlines.poll()) != null) session.fail(new ClosedSelectorException());
+        try {
+            selector.close();
+        } catch (IOException ignore) {}
+    }
+
+    private long nextSelectTimeout(){
+        long now = System.nanoTime(), wakeAt = now + Long.MAX_VALUE / 2;
+        boolean isTimed = false;
+        Session next = deadlines.peek();
+        if(next != null){
+            wakeAt = next.deadline;
+            isTimed = true;
+        }
+        for(Session session : racing){
+            if(session.hasCandidates() && (!isTimed || session.nextAttemptAt - wakeAt < 0)){
+                wakeAt = session.nextAttemptAt;
+                isTimed = true;
+            }
+        }
+        if(!waiting.isEmpty()){ // the line moves on once a token is back (or a session is done, which wakes the selector anyway)
+            long tokenAt = now + governor.nanosUntilToken();
+            if(!isTimed || tokenAt - wakeAt < 0) wakeAt = tokenAt;
+            isTimed = true;
+        }
+        if(!isTimed) return 0; // wait for wakeup()
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(wakeAt - now));
+    }
+
+    // Starts the next connect of every race whose last attempt got no answer within CONNECTION_ATTEMPT_DELAY.
+    private void startDueAttempts(){
+        long now = System.nanoTime();
+        for(Session session : racing.toArray(new Session[0])){
+            if(!session.hasCandidates() || session.nextAttemptAt - now > 0) continue;
+            try {
+                session.startAttempt();
+            } catch (IOException | RuntimeException e) {
+                session.fail(e);
+            }
+        }
+    }
+
+    private void registerPending(){
+        Session session;
+        while ((session = pending.poll()) != null) waiting.offer(session);
+        admitWaiting();
+    }
+
+    // Starts waiting sessions, in order, as far as the governor's budget goes;
+    // one held back by its subnet's cap doesn't hold back the ones behind it.
+    private void admitWaiting(){
+        Iterator<Session> line = waiting.iterator();
+        while (line.hasNext() && !governor.isSaturated()){
+            Session session = line.next();
+            if(!governor.tryAdmit(session.subnet)) continue;
+            line.remove();
+            try {
+                session.admit();
+                deadlines.offer(session);
+            } catch (IOException | RuntimeException e) {
+                session.fail(e);
+            }
+        }
+        queued = waiting.size();
+    }
+
+    private void expireSessions(){
+        long now = System.nanoTime();
+        Session next;
+        while ((next = deadlines.peek()) != null && (next.isDone() || next.deadline - now <= 0)){
+            deadlines.poll();
+            if(!next.isDone()) next.fail(new SocketTimeoutException("Ping timed out: " + next.host));
+        }
+    }
+
+    private enum State { CONNECTING, SENDING_STATUS, READING_STATUS, SENDING_PING, READING_PONG, SENDING_LEGACY, READING_LEGACY, DONE }
+
+    /**
+     * The ping dialect a host answered to; MODERN also remembers the protocol number the server reported,
+     * which later handshakes are sent with.
+     */
+    private enum Dialect { MODERN, LEGACY }
+
+    private static final class Capability {
+        final Dialect dialect;
+        final int protocol;
+
+        Capability(Dialect dialect, int protocol){
+            this.dialect = dialect;
+            this.protocol = protocol;
+        }
+    }
+
+    public ConnectGovernor getGovernor(){
+        return this.governor;
+    }
+
+    // Pings waiting for room in the governor's budget
+    public int getQueued(){
+        return this.queued + this.pending.size();
+    }
+
+    // Address family the host last connected over, tried first next time; null if it never connected
+    Class<? extends InetAddress> getFamily(InetSocketAddress host){
+        return this.families.get(capabilityKey(host));
+    }
+
+    private static String capabilityKey(InetSocketAddress host){
+        return host.getHostString() + ":" + host.getPort();
+    }
+
+    /**
+     * Orders the addresses as RFC 8305 (section 4) does: alternating families, the preferred one first.
+     * @param preferred Family that connected last, or null to take the name service's first address' family
+     */
+    static List<InetSocketAddress> interleave(List<InetSocketAddress> addresses, Class<? extends InetAddress> preferred){
+        if(preferred == null) preferred = addresses.get(0).getAddress().getClass();
+        List<InetSocketAddress> first = new ArrayList<>(), second = new ArrayList<>();
+        for(InetSocketAddress address : addresses) (address.getAddress().getClass() == preferred ? first : second).add(address);
+        List<InetSocketAddress> ordered = new ArrayList<>(addresses.size());
+        for(int i = 0; i < Math.max(first.size(), second.size()); i++){
+            if(i < first.size()) ordered.add(first.get(i));
+            if(i < second.size()) ordered.add(second.get(i));
+        }
+        return ordered;
+    }
+
+    private final class Session {
+        final InetSocketAddress host; // the first candidate, its name and port are shared by all of them
+        final List<InetSocketAddress> candidates;
+        final String capabilityKey;
+        final long subnet;
+        final int timeout;
+        long startTime, deadline; // set once admitted by the governor
+        final StatusResponse previous;
+        final LatencyTracker latency;
+        final CompletableFuture<StatusResponse> future;
+
+        State state;
+        Dialect dialect;
+        int protocol;
+        boolean isProbing; // no known dialect yet, so a protocol error falls back to the legacy ping
+        boolean isAdmitted;
+        SocketChannel channel;           // the race's winner
+        final List<SocketChannel> attempts; // connects still racing
+        int nextCandidate;
+        long nextAttemptAt;
+        IOException lastConnectError;
+        ByteBuffer out, in;
+        boolean isPooledOut; // out is a PING_BUFFERS buffer, not a view of a shared request frame
+        StatusResponse response;
+        long pingSentTime;
+
+        Session(List<InetSocketAddress> addresses, int timeout, StatusResponse previous, LatencyTracker latency, CompletableFuture<StatusResponse> future){
+            this.host = addresses.get(0);
+            this.capabilityKey = capabilityKey(host);
+            this.candidates = interleave(addresses, families.get(capabilityKey));
+            this.attempts = new ArrayList<>(2);
+            this.previous = previous;
+            this.latency = latency;
+            this.subnet = ConnectGovernor.subnetOf(host);
+            this.timeout = timeout;
+            this.future = future;
+
+            Capability capability = capabilities.get(capabilityKey);
+            this.isProbing = capability == null;
+            this.dialect = (capability == null) ? Dialect.MODERN : capability.dialect;
+            this.protocol = (capability == null) ? PacketCodec.PROTOCOL_VERSION : capability.protocol;
+        }
+
+        boolean isDone(){
+            return state == State.DONE;
+        }
+
+        boolean hasCandidates(){
+            return nextCandidate < candidates.size();
+        }
+
+        // Out of the governor's line, the clock starts now.
+        void admit() throws IOException {
+            isAdmitted = true;
+            startTime = System.nanoTime();
+            deadline = startTime + TimeUnit.MILLISECONDS.toNanos(timeout);
+            start();
+        }
+
+        void start() throws IOException {
+            out = (dialect == Dialect.LEGACY) ? PacketCodec.legacyRequest() : PacketCodec.statusRequest(host, protocol);
+            isPooledOut = false;
+            in = PacketCodec.READ_BUFFERS.acquire();
+
+            state = State.CONNECTING;
+            nextCandidate = 0;
+            racing.add(this);
+            startAttempt();
+        }
+
+        /**
+         * Opens a connect to the next candidate; one that fails right away moves on to the one after it.
+         * Without a token left, the attempt is put off until there is one.
+         * @throws IOException The last connect error, once every candidate failed
+         */
+        void startAttempt() throws IOException {
+            while (hasCandidates()){
+                long wait = governor.takeToken();
+                if(wait > 0){
+                    nextAttemptAt = System.nanoTime() + wait;
+                    return;
+                }
+                InetSocketAddress address = candidates.get(nextCandidate++);
+                nextAttemptAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CONNECTION_ATTEMPT_DELAY);
+                SocketChannel attempt = SocketChannel.open();
+                try {
+                    attempt.configureBlocking(false);
+                    boolean isConnected = attempt.connect(address);
+                    attempts.add(attempt);
+                    SelectionKey key = attempt.register(selector, isConnected ? 0 : SelectionKey.OP_CONNECT, this);
+                    if(isConnected) onConnected(attempt, key);
+                    return;
+                } catch (IOException e) {
+                    attempts.remove(attempt);
+                    closeQuietly(attempt);
+                    lastConnectError = e;
+                }
+            }
+            if(attempts.isEmpty()) throw lastConnectError;
+        }
+
+        // The race is decided: keep the winner, drop every other attempt and remember the winning family.
+        private void onConnected(SocketChannel winner, SelectionKey key){
+            for(SocketChannel attempt : attempts) if(attempt != winner) closeQuietly(attempt);
+            attempts.clear();
+            racing.remove(this);
+            channel = winner;
+            try {
+                families.put(capabilityKey, ((InetSocketAddress) winner.getRemoteAddress()).getAddress().getClass());
+            } catch (IOException ignore) {}
+            state = sendingState();
+            key.interestOps(SelectionKey.OP_WRITE);
+        }
+
+        private State sendingState(){
+            return (dialect == Dialect.LEGACY) ? State.SENDING_LEGACY : State.SENDING_STATUS;
+        }
+
+        void handle(SelectionKey key) throws IOException {
+            if(!key.isValid()) return; // a losing attempt, closed earlier in the same select round
+            if(state == State.CONNECTING){
+                SocketChannel attempt = (SocketChannel) key.channel();
+                try {
+                    if(!key.isConnectable() || !attempt.finishConnect()) return;
+                } catch (IOException e) {
+                    // this address is out, the next one doesn't wait for the stagger
+                    attempts.remove(attempt);
+                    closeQuietly(attempt);
+                    lastConnectError = e;
+                    startAttempt();
+                    return;
+                }
+                onConnected(attempt, key);
+            }
+            if(key.isValid() && key.isWritable()){
+                channel.write(out);
+                if(!out.hasRemaining()){
+                    pingSentTime = System.nanoTime();
+                    state = (state == State.SENDING_STATUS) ? State.READING_STATUS
+                            : (state == State.SENDING_LEGACY) ? State.READING_LEGACY : State.READING_PONG;
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+            if(key.isValid() && key.isReadable()){
+                if(channel.read(in) == -1) throw new EOFException("Premature end of stream.");
+                in.flip();
+                if(state == State.READING_LEGACY){
+                    onLegacyResponse();
+                } else {
+                    ByteBuffer payload = PacketCodec.nextFrame(in);
+                    if(payload == null) growIfNeeded(PacketCodec.peekFrameSize(in));
+                    else onFrame(key, payload);
+                }
+                if(!isDone()) in.compact();
+            }
+        }
+
+        // Replies larger than a pooled buffer (ie huge favicons or MOTDs) get a one-off heap buffer.
+        private void growIfNeeded(int size){
+            if(size <= in.capacity()) return;
+            ByteBuffer grown = ByteBuffer.allocate(size);
+            grown.put(in);
+            grown.flip();
+            PacketCodec.READ_BUFFERS.release(in);
+            in = grown;
+        }
+
+        private void onFrame(SelectionKey key, ByteBuffer payload) throws IOException {
+            int id = PacketCodec.readVarInt(payload);
+            if(state == State.READING_STATUS){
+                if(id != 0x00) throw new IOException("Invalid packetID"); // we want a status response
+                int length = PacketCodec.readVarInt(payload);
+                if(length <= 0 || length > payload.remaining()) throw new IOException("Invalid string length.");
+                payload.limit(payload.position() + length);
+                response = StatusResponseAdapter.decode(payload, previous);
+
+                out = PacketCodec.PING_BUFFERS.acquire();
+                isPooledOut = true;
+                PacketCodec.writePing(out, System.currentTimeMillis());
+                state = State.SENDING_PING;
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else if(state == State.READING_PONG){
+                if(id != 0x01) throw new IOException("Invalid packetID");
+                long now = System.nanoTime();
+                if(latency != null) latency.record(now - pingSentTime, now - startTime);
+
+                // remember the dialect, and the server's own protocol number for the next handshakes
+                int serverProtocol = (response.getVersion() == null) ? -1 : response.getVersion().getProtocol();
+                if(isProbing || (serverProtocol > 0 && serverProtocol != protocol))
+                    capabilities.put(capabilityKey, new Capability(Dialect.MODERN, (serverProtocol > 0) ? serverProtocol : protocol));
+                close();
+                future.complete(response);
+            }
+        }
+
+        private void onLegacyResponse() throws IOException {
+            int size = PacketCodec.peekLegacySize(in);
+            if(size < 0 || in.remaining() < size){ // wait for the rest
+                growIfNeeded(size);
+                return;
+            }
+            long now = System.nanoTime();
+            if(latency != null) latency.record(now - pingSentTime, now - startTime);
+
+            ByteBuffer payload = in.slice();
+            payload.position(3).limit(size);
+            response = StatusResponseAdapter.decodeLegacy(payload, previous);
+            if(isProbing) capabilities.put(capabilityKey, new Capability(Dialect.LEGACY, -1));
+            close();
+            future.complete(response);
+        }
+
+        void fail(Throwable cause){
+            if(isDone()) return;
+            // A host of unknown dialect choking on the modern handshake gets one legacy attempt, within the same deadline.
+            if(isProbing && dialect == Dialect.MODERN && CircuitBreaker.FailureType.classify(cause) == CircuitBreaker.FailureType.PROTOCOL){
+                releaseChannel();
+                dialect = Dialect.LEGACY;
+                try {
+                    start();
+                    return;
+                } catch (IOException | RuntimeException e) {
+                    cause = e;
+                }
+            }
+            // A host that stopped answering its known dialect (ie it was upgraded) gets probed again next time.
+            if(!isProbing && CircuitBreaker.FailureType.classify(cause) == CircuitBreaker.FailureType.PROTOCOL)
+                capabilities.remove(capabilityKey);
+            if(latency != null && cause instanceof SocketTimeoutException) latency.recordTimeout(timeout);
+            close();
+            future.completeExceptionally(cause);
+        }
+
+        private void close(){
+            if(state == State.DONE) return;
+            state = State.DONE;
+            releaseChannel();
+            if(isAdmitted) governor.release(subnet);
+            isAdmitted = false;
+        }
+
+        private void releaseChannel(){
+            PacketCodec.READ_BUFFERS.release(in);
+            if(isPooledOut) PacketCodec.PING_BUFFERS.release(out);
+            isPooledOut = false;
+            in = out = null;
+            racing.remove(this);
+            for(SocketChannel attempt : attempts) closeQuietly(attempt);
+            attempts.clear();
+            if(channel != null) closeQuietly(channel);
+            channel = null;
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel){
+        try {
+            channel.close();
+        } catch (IOException ignore) {}
+    }
+
+    /* Contract Methods */
+
+    @Override
+    public void shutdown(){
+        this.isRunning = false;
+        this.selector.wakeup();
+    }
+}
@@ -1,10 +1,9 @@
 package MCHerald.ping;
 
-import com.google.gson.Gson;
-
-import java.io.*;
 import java.net.InetSocketAddress;
-import java.net.Socket;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  *
@@ -12,9 +11,12 @@ import java.net.Socket;
  * Moved "StatusResponse" to it's own file.
  */
 public class ServerPing {
+    private static final int MIN_TIMEOUT = 250;
+
     private InetSocketAddress host;
-    private int timeout = 7000;
-    private Gson gson = new Gson();
+    private List<InetSocketAddress> addresses; // every address of the host, raced by fetchDataAsync
+    private final int timeout = 7000; // ceiling, the actual time-out is derived from the measured latency
+    private final LatencyTracker latency = new LatencyTracker();
 
     public ServerPing(InetSocketAddress host){
         this.setAddress(host);
@@ -22,127 +24,38 @@ public class ServerPing {
 
     public void setAddress(InetSocketAddress host) {
         this.host = host;
+        this.addresses = Collections.singletonList(host);
     }
 
-    public InetSocketAddress getAddress() {
-        return this.host;
+    /**
+     * @param addresses Every resolved address of the host, the first one being the preferred one
+     */
+    public void setAddresses(List<InetSocketAddress> addresses) {
+        this.host = addresses.get(0);
+        this.addresses = addresses;
     }
 
-    void setTimeout(int timeout) {
-        this.timeout = timeout;
+    public InetSocketAddress getAddress() {
+        return this.host;
     }
 
     int getTimeout() {
-        return this.timeout;
+        return this.latency.getTimeout(MIN_TIMEOUT, this.timeout);
     }
 
-    public int readVarInt(DataInputStream in) throws IOException {
-        int i = 0;
-        int j = 0;
-        while (true) {
-            int k = in.readByte();
-            i |= (k & 0x7F) << j++ * 7;
-            if (j > 5) throw new RuntimeException("VarInt too big");
-            if ((k & 0x80) != 128) break;
-        }
-        return i;
+    public LatencyTracker getLatency() {
+        return this.latency;
     }
 
-    public void writeVarInt(DataOutputStream out, int paramInt) throws IOException {
-        while (true) {
-            if ((paramInt & 0xFFFFFF80) == 0) {
-                out.writeByte(paramInt);
-                return;
-            }
-
-            out.writeByte(paramInt & 0x7F | 0x80);
-            paramInt >>>= 7;
-        }
-    }
-
-    public StatusResponse fetchData() throws IOException {
-
-        Socket socket = new Socket();
-        OutputStream outputStream;
-        DataOutputStream dataOutputStream;
-        InputStream inputStream;
-        InputStreamReader inputStreamReader;
-
-        socket.setSoTimeout(this.timeout);
-
-        socket.connect(host, timeout);
-
-        outputStream = socket.getOutputStream();
-        dataOutputStream = new DataOutputStream(outputStream);
-
-        inputStream = socket.getInputStream();
-        inputStreamReader = new InputStreamReader(inputStream);
-
-        ByteArrayOutputStream b = new ByteArrayOutputStream();
-        DataOutputStream handshake = new DataOutputStream(b);
-        handshake.writeByte(0x00); //packet id for handshake
-        writeVarInt(handshake, 4); //protocol version
-        writeVarInt(handshake, this.host.getHostString().length()); //host length
-        handshake.writeBytes(this.host.getHostString()); //host string
-        handshake.writeShort(host.getPort()); //port
-        writeVarInt(handshake, 1); //state (1 for handshake)
-
-        writeVarInt(dataOutputStream, b.size()); //prepend size
-        dataOutputStream.write(b.toByteArray()); //write handshake packet
-
-
-        dataOutputStream.writeByte(0x01); //size is only 1
-        dataOutputStream.writeByte(0x00); //packet id for ping
-        DataInputStream dataInputStream = new DataInputStream(inputStream);
-        int size = readVarInt(dataInputStream); //size of packet
-        int id = readVarInt(dataInputStream); //packet id
-
-        if (id == -1) {
-            throw new IOException("Premature end of stream.");
-        }
-
-        if (id != 0x00) { //we want a status response
-            throw new IOException("Invalid packetID");
-        }
-        int length = readVarInt(dataInputStream); //length of json string
-
-        if (length == -1) {
-            throw new IOException("Premature end of stream.");
-        }
-
-        if (length == 0) {
-            throw new IOException("Invalid string length.");
-        }
-
-        byte[] in = new byte[length];
-        dataInputStream.readFully(in);  //read json string
-        String json = new String(in);
-
-
-        long now = System.currentTimeMillis();
-        dataOutputStream.writeByte(0x09); //size of packet
-        dataOutputStream.writeByte(0x01); //0x01 for ping
-        dataOutputStream.writeLong(now); //time!?
-
-        readVarInt(dataInputStream);
-        id = readVarInt(dataInputStream);
-        if (id == -1) {
-            throw new IOException("Premature end of stream.");
-        }
-
-        if (id != 0x01) {
-            throw new IOException("Invalid packetID");
-        }
-        long pingtime = dataInputStream.readLong(); //read response
-
-        StatusResponse response = gson.fromJson(json, StatusResponse.class);
-
-        dataOutputStream.close();
-        outputStream.close();
-        inputStreamReader.close();
-        inputStream.close();
-        socket.close();
-
-        return response;
+    /**
+     * Pings the host without blocking, on the shared engine's event loop.
+     * @param pings The shared engine, behind its single-flight layer
+     * @param previous This host's last response, handed back as is if nothing changed
+     * @param maxAge Oldest result of another caller's ping accepted, in ms; 0 only joins a running ping
+     * @return Future of this host's status response
+     */
+    public CompletableFuture<StatusResponse> fetchDataAsync(PingCoalescer pings, StatusResponse previous, long maxAge) {
+        // the engine records the latency (or time-out) only if this call starts the ping, not if it joins another's
+        return pings.ping(this.addresses, getTimeout(), previous, latency, maxAge);
     }
-}
\ No newline at end of file
+}
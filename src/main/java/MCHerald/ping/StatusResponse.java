@@ -1,6 +1,6 @@
 package MCHerald.ping;
 
-import java.util.List;
+import MCHerald.player.PlayerSet;
 
 /**
  * @author zh32
@@ -8,10 +8,12 @@ import java.util.List;
  **/
 
 public class StatusResponse {
-    private Description description;
-    private Players players;
-    private Version version;
-    private String favicon;
+    // Package-private, filled in by StatusResponseAdapter
+    Description description;
+    Players players;
+    Version version;
+    long faviconHash; // key into FaviconCache, 0 if the server has none
+    long payloadHash; // CRC32 of the raw JSON payload
     private int time;
 
     public Description getDescription() {
@@ -26,8 +28,12 @@ public class StatusResponse {
         return version;
     }
 
-    public String getFavicon() {
-        return favicon;
+    public long getFaviconHash() {
+        return faviconHash;
+    }
+
+    public long getPayloadHash() {
+        return payloadHash;
     }
 
     public int getTime() {
@@ -39,9 +45,9 @@ public class StatusResponse {
     }
 
     public class Players {
-        private int max;
-        private int online;
-        private List<Player> sample;
+        int max;
+        int online;
+        PlayerSet sample; // null if the server sent none
 
         public int getMax() {
             return max;
@@ -51,27 +57,17 @@ public class StatusResponse {
             return online;
         }
 
-        public List<Player> getSample() {
+        /**
+         * @return The sample as interned player ids, ready for a {@link MCHerald.player.PresenceDiff}; null if the server sent none
+         */
+        public PlayerSet getSampleSet() {
             return sample;
         }
     }
 
-    public class Player {
-        private String name;
-        private String id;
-
-        public String getName() {
-            return name;
-        }
-
-        public String getId() {
-            return id;
-        }
-    }
-
     public class Version {
-        private String name;
-        private int protocol;
+        String name;
+        int protocol;
 
         public String getName() {
             return name;
@@ -83,7 +79,7 @@ public class StatusResponse {
     }
 
     public class Description {
-        private String text;
+        String text;
 
         public String getText() {
             return text;
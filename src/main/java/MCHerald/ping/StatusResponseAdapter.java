@@ -0,0 +1,309 @@
+package MCHerald.ping;
+
+import MCHerald.player.PlayerRegistry;
+import MCHerald.player.PlayerSet;
+import MCHerald.util.FaviconCache;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Hand-written, reflection-free decoder for {@link StatusResponse}, streaming over a {@link JsonReader}; read only.
+ * Only the fields we show are kept, everything else is skipped without being materialized as a String.
+ * The favicon is handed to the {@link FaviconCache} and only its hash is kept on the response; its hash is taken
+ * over the raw bytes, so a favicon the cache already holds is skipped rather than read into a (~10 KB) String.
+ */
+public final class StatusResponseAdapter {
+
+    private static final byte[] FAVICON = "favicon".getBytes(StandardCharsets.US_ASCII);
+    static final int MAX_CHAT_DEPTH = 32; // nesting of a MOTD's components past which it's skipped, not recursed into
+
+    private StatusResponseAdapter(){}
+
+    /**
+     * Streams a status response straight out of the packet's bytes.
+     * @param json UTF-8 encoded JSON, consumed by this call
+     */
+    public static StatusResponse decode(ByteBuffer json) throws IOException {
+        return decode(json, null);
+    }
+
+    /**
+     * Same as {@link #decode(ByteBuffer)}, but short-circuits when the payload is byte-identical to the previous one.
+     * @param json UTF-8 encoded JSON, consumed by this call
+     * @param previous The last response of the same server, may be null
+     * @return The previous response itself when the payload hasn't changed (and its favicon is still cached), otherwise a freshly parsed one
+     */
+    public static StatusResponse decode(ByteBuffer json, StatusResponse previous) throws IOException {
+        long hash = payloadHash(json);
+        // an icon the FaviconCache evicted since is read again, or it would stay blank for good
+        if(previous != null && previous.payloadHash == hash
+                && (previous.faviconHash == 0 || FaviconCache.INSTANCE.contains(previous.faviconHash))){
+            json.position(json.limit());
+            return previous;
+        }
+        JsonReader reader = new JsonReader(new ByteBufferReader(json));
+        reader.setLenient(true);
+        StatusResponse response = read(reader, faviconHash(json));
+        if(response != null) response.payloadHash = hash;
+        return response;
+    }
+
+    /**
+     * Builds a status response from a legacy (pre-1.7) ping's kick message, which is either
+     * "\u00A71\0protocol\0version\0motd\0online\0max" (1.4+) or "motd\u00A7online\u00A7max" (older).
+     * @param chars The message's UTF-16BE chars, consumed by this call
+     * @param previous The last response of the same server, returned as is if the message hasn't changed
+     */
+    public static StatusResponse decodeLegacy(ByteBuffer chars, StatusResponse previous) throws IOException {
+        long hash = payloadHash(chars);
+        if(previous != null && previous.payloadHash == hash){
+            chars.position(chars.limit());
+            return previous;
+        }
+        String message = StandardCharsets.UTF_16BE.decode(chars).toString();
+        String[] fields;
+        StatusResponse response = new StatusResponse();
+        response.version = response.new Version();
+        if(message.startsWith("\u00A71\0")){
+            fields = message.split("\0");
+            if(fields.length < 6) throw new IOException("Invalid legacy response");
+            response.version.protocol = parseInt(fields[1]);
+            response.version.name = fields[2];
+            fields = new String[]{fields[3], fields[4], fields[5]};
+        } else {
+            int last = message.lastIndexOf('\u00A7'), middle = (last < 0) ? -1 : message.lastIndexOf('\u00A7', last - 1);
+            if(middle < 0) throw new IOException("Invalid legacy response");
+            fields = new String[]{message.substring(0, middle), message.substring(middle + 1, last), message.substring(last + 1)};
+            response.version.protocol = -1;
+            response.version.name = "";
+        }
+        response.description = response.new Description();
+        response.description.text = fields[0];
+        response.players = response.new Players();
+        response.players.online = parseInt(fields[1]);
+        response.players.max = parseInt(fields[2]);
+        response.payloadHash = hash;
+        return response;
+    }
+
+    /* Private Methods */
+
+    private static int parseInt(String value) throws IOException {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid legacy response");
+        }
+    }
+
+    // CRC32 is intrinsified by the JVM, so hashing is far cheaper than parsing. Leaves the buffer's position as is.
+    private static long payloadHash(ByteBuffer json){
+        CRC32 crc = new CRC32();
+        int position = json.position();
+        crc.update(json);
+        json.position(position);
+        return crc.getValue();
+    }
+
+    // FNV-1a of the top-level "favicon" string's raw bytes (between its quotes), 0 if there is none. Leaves the buffer's position as is.
+    private static long faviconHash(ByteBuffer json){
+        int depth = 0;
+        for(int i = json.position(); i < json.limit(); i++){
+            byte b = json.get(i);
+            if(b == '{' || b == '[') depth++;
+            else if(b == '}' || b == ']') depth--;
+            else if(b == '"') {
+                int end = stringEnd(json, i + 1);
+                if(depth == 1 && end - i - 1 == FAVICON.length && startsWith(json, i + 1, FAVICON)) {
+                    int value = end + 1;
+                    while (value < json.limit() && isWhitespace(json.get(value))) value++;
+                    if(value >= json.limit() || json.get(value) != ':') return 0;
+                    do value++; while (value < json.limit() && isWhitespace(json.get(value)));
+                    if(value >= json.limit() || json.get(value) != '"') return 0;
+                    int valueEnd = stringEnd(json, value + 1);
+                    return (valueEnd < json.limit()) ? FaviconCache.hash(json, value + 1, valueEnd) : 0;
+                }
+                i = end;
+            }
+        }
+        return 0;
+    }
+
+    // Index of the quote closing the string whose chars start at the given index, the limit if it's unterminated
+    private static int stringEnd(ByteBuffer json, int from){
+        for(int i = from; i < json.limit(); i++){
+            byte b = json.get(i);
+            if(b == '\\') i++;
+            else if(b == '"') return i;
+        }
+        return json.limit();
+    }
+
+    private static boolean startsWith(ByteBuffer json, int from, byte[] prefix){
+        for(int i = 0; i < prefix.length; i++) if(json.get(from + i) != prefix[i]) return false;
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b){
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    /**
+     * @param faviconHash The favicon's hash over its raw bytes, 0 if it couldn't be told without parsing
+     */
+    private static StatusResponse read(JsonReader in, long faviconHash) throws IOException {
+        if(in.peek() == JsonToken.NULL){
+            in.nextNull();
+            return null;
+        }
+        StatusResponse response = new StatusResponse();
+        in.beginObject();
+        while (in.hasNext()){
+            switch (in.nextName()){
+                case "description":
+                    response.description = readDescription(in, response);
+                    break;
+                case "players":
+                    response.players = readPlayers(in, response);
+                    break;
+                case "version":
+                    response.version = readVersion(in, response);
+                    break;
+                case "favicon":
+                    if(in.peek() != JsonToken.STRING){
+                        in.skipValue();
+                        break;
+                    }
+                    if(faviconHash != 0 && FaviconCache.INSTANCE.contains(faviconHash)) {
+                        in.skipValue(); // skipped in place, never made a String
+                        response.faviconHash = faviconHash;
+                        break;
+                    }
+                    String favicon = in.nextString();
+                    response.faviconHash = (faviconHash != 0) ? faviconHash : FaviconCache.hash(favicon);
+                    FaviconCache.INSTANCE.offer(response.faviconHash, favicon);
+                    break;
+                default: // modinfo, forgeData, ...
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return response;
+    }
+
+    private static StatusResponse.Players readPlayers(JsonReader in, StatusResponse response) throws IOException {
+        StatusResponse.Players players = response.new Players();
+        in.beginObject();
+        while (in.hasNext()){
+            switch (in.nextName()){
+                case "max":
+                    players.max = in.nextInt();
+                    break;
+                case "online":
+                    players.online = in.nextInt();
+                    break;
+                case "sample":
+                    if(in.peek() == JsonToken.NULL){
+                        in.nextNull();
+                        break;
+                    }
+                    int[] ids = new int[16];
+                    int count = 0;
+                    in.beginArray();
+                    while (in.hasNext()){
+                        if(count == ids.length) ids = Arrays.copyOf(ids, count * 2);
+                        ids[count++] = readPlayer(in);
+                    }
+                    in.endArray();
+                    players.sample = PlayerSet.of(ids, count);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return players;
+    }
+
+    // Interned right away, so the response keeps an int per player rather than two strings.
+    private static int readPlayer(JsonReader in) throws IOException {
+        String name = null, id = null;
+        in.beginObject();
+        while (in.hasNext()){
+            switch (in.nextName()){
+                case "name":
+                    name = in.nextString();
+                    break;
+                case "id":
+                    id = in.nextString();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return PlayerRegistry.INSTANCE.intern(id, name);
+    }
+
+    private static StatusResponse.Version readVersion(JsonReader in, StatusResponse response) throws IOException {
+        StatusResponse.Version version = response.new Version();
+        in.beginObject();
+        while (in.hasNext()){
+            switch (in.nextName()){
+                case "name":
+                    version.name = in.nextString();
+                    break;
+                case "protocol":
+                    version.protocol = in.nextInt();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return version;
+    }
+
+    // The MOTD is either a plain string or a chat component, whose "extra" parts are flattened into the text.
+    private static StatusResponse.Description readDescription(JsonReader in, StatusResponse response) throws IOException {
+        StatusResponse.Description description = response.new Description();
+        StringBuilder text = new StringBuilder();
+        readChat(in, text, 0);
+        description.text = text.toString();
+        return description;
+    }
+
+    private static void readChat(JsonReader in, StringBuilder text, int depth) throws IOException {
+        if(depth > MAX_CHAT_DEPTH){
+            in.skipValue(); // iterative, so a hostile nesting can't overflow the selector thread's stack
+            return;
+        }
+        switch (in.peek()){
+            case STRING:
+                text.append(in.nextString());
+                break;
+            case BEGIN_ARRAY:
+                in.beginArray();
+                while (in.hasNext()) readChat(in, text, depth + 1);
+                in.endArray();
+                break;
+            case BEGIN_OBJECT:
+                in.beginObject();
+                while (in.hasNext()){
+                    String name = in.nextName();
+                    if(name.equals("text") || name.equals("extra")) readChat(in, text, depth + 1);
+                    else in.skipValue();
+                }
+                in.endObject();
+                break;
+            default:
+                in.skipValue();
+        }
+    }
+}
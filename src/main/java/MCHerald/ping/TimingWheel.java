@@ -0,0 +1,136 @@
+package MCHerald.ping;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel (Varghese & Lauck), with O(1) schedule, cancel and reschedule by key.
+ * Four levels of 64 slots each cover 2^24 ticks; each level's slot is cascaded into the level
+ * below once the clock reaches it. All methods are synchronized, so any thread may use it.
+ * @param <T> The value handed back once its key expires
+ */
+class TimingWheel<T> {
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+    static final long MAX_DELAY = (1L << (WHEEL_BITS * LEVELS)) - 1;
+
+    private final Entry<T>[][] wheels; // [level][slot] -> sentinel of a circular list
+    private final HashMap<String, Entry<T>> entries;
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(){
+        this.wheels = (Entry<T>[][]) new Entry<?>[LEVELS][WHEEL_SIZE];
+        for(Entry<T>[] wheel : wheels)
+            for(int i = 0; i < WHEEL_SIZE; i++) wheel[i] = new Entry<>(null, null, 0);
+        this.entries = new HashMap<>();
+        this.currentTick = 0;
+    }
+
+    /**
+     * Schedules the key to expire after the given number of ticks, replacing any earlier schedule of it.
+     * @param key Unique key, ie the server's UUID
+     * @param value Handed back by {@link #advanceTo(long)} once expired
+     * @param delayTicks Ticks from now, clamped to [1, MAX_DELAY]
+     */
+    synchronized void schedule(String key, T value, long delayTicks){
+        Entry<T> entry = entries.remove(key);
+        if(entry != null) entry.unlink();
+        entry = new Entry<>(key, value, currentTick + Math.max(1, Math.min(delayTicks, MAX_DELAY)));
+        entries.put(key, entry);
+        insert(entry);
+    }
+
+    /**
+     * @param key The key to be cancelled
+     * @return True if it was scheduled
+     */
+    synchronized boolean cancel(String key){
+        Entry<T> entry = entries.remove(key);
+        if(entry == null) return false;
+        entry.unlink();
+        return true;
+    }
+
+    /**
+     * Moves the clock forward, one tick at a time, so ticks missed by a late timer still fire (in order).
+     * @param tick The absolute tick to advance to, ignored if not ahead of the current one
+     * @return Values of every key that expired on the way
+     */
+    synchronized List<T> advanceTo(long tick){
+        List<T> expired = new ArrayList<>();
+        while (currentTick < tick){
+            currentTick++;
+            // cascade every level whose lower bits just wrapped around
+            for(int level = 1; level < LEVELS && (currentTick & ((1L << (WHEEL_BITS * level)) - 1)) == 0; level++)
+                cascade(wheels[level][(int) (currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK]);
+
+            Entry<T> head = wheels[0][(int) currentTick & WHEEL_MASK];
+            for(Entry<T> e = head.next; e != head; e = head.next){
+                e.unlink();
+                entries.remove(e.key);
+                expired.add(e.value);
+            }
+        }
+        return expired;
+    }
+
+    synchronized long getCurrentTick(){
+        return this.currentTick;
+    }
+
+    synchronized int size(){
+        return this.entries.size();
+    }
+
+    /* Private Methods */
+
+    // Places the entry on the lowest level whose slot range still covers its expiration.
+    private void insert(Entry<T> entry){
+        for(int level = 0; level < LEVELS; level++){
+            int shift = WHEEL_BITS * level;
+            if((entry.expiration >>> shift) - (currentTick >>> shift) < WHEEL_SIZE){
+                entry.linkBefore(wheels[level][(int) (entry.expiration >>> shift) & WHEEL_MASK]);
+                return;
+            }
+        }
+        throw new IllegalStateException("Delay past the wheel's range: " + entry.expiration);
+    }
+
+    private void cascade(Entry<T> head){
+        for(Entry<T> e = head.next; e != head; e = head.next){
+            e.unlink();
+            insert(e);
+        }
+    }
+
+    private static class Entry<T> {
+        final String key;
+        final T value;
+        final long expiration;
+        Entry<T> prev = this, next = this;
+
+        Entry(String key, T value, long expiration){
+            this.key = key;
+            this.value = value;
+            this.expiration = expiration;
+        }
+
+        void linkBefore(Entry<T> head){
+            this.prev = head.prev;
+            this.next = head;
+            head.prev.next = this;
+            head.prev = this;
+        }
+
+        void unlink(){
+            prev.next = next;
+            next.prev = prev;
+            prev = next = this;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package MCHerald.player;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide interning table of players: every UUID seen in any sample gets a compact int id,
+ * along with the latest name it was seen with. Player sets then are sorted int arrays ({@link PlayerSet}),
+ * and a player's strings are held once here instead of in every response of every server.
+ * The UUIDs live in an open-addressing table of primitive longs, so lookups don't box or allocate.
+ * Entries without a usable UUID (ie the fake "player" lines some servers put in their sample) are keyed
+ * by a hash of their text.
+ * A player no sample showed for RETENTION is dropped by the next sweep (hourly, or as soon as the table is full),
+ * and its slot reused. An id carries the generation of its slot, so an old set still holding a dropped player's id
+ * never resolves to the slot's next player: it just reads as unknown. Past MAX_PLAYERS players seen within RETENTION,
+ * new players are no longer interned (and so not tracked), which is logged.
+ */
+public class PlayerRegistry {
+
+    public static final PlayerRegistry INSTANCE = new PlayerRegistry(PlayerRegistry.MAX_PLAYERS, System::currentTimeMillis);
+
+    public static final int NONE = -1;
+    static final int MAX_PLAYERS = 1 << 22;
+    static final int INDEX_BITS = 22;                                   // an id is its slot's generation, then its index
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    private static final int GENERATION_MASK = (1 << (31 - INDEX_BITS)) - 1;
+    static final long RETENTION = TimeUnit.DAYS.toMillis(1);            // ms a player is kept without being seen
+    static final long SWEEP_INTERVAL = TimeUnit.HOURS.toMillis(1);
+    static final long FULL_SWEEP_INTERVAL = TimeUnit.MINUTES.toMillis(1); // while full, so a flood of new players doesn't sweep each time
+    private static final ThreadLocal<long[]> PARSED = ThreadLocal.withInitial(() -> new long[2]); // scratch of intern(String, String)
+
+    private final int maxPlayers;
+    private final LongSupplier clock;
+    private final long epoch;       // ms, lastSeen counts minutes from here
+    private long[] slots;           // [msb, lsb] pairs, open addressing with linear probing
+    private int[] slotIds;          // id of the UUID in the matching slot, NONE for a free slot
+    private long[] uuids;           // index -> [msb, lsb]
+    private String[] names;         // index -> latest name, null for a free index
+    private int[] lastSeen;         // index -> minutes since the epoch
+    private short[] generations;    // index -> generation of the id it holds
+    private int[] free;             // indexes dropped by a sweep, to be reused
+    private int freeCount, used;    // used: indexes ever handed out, free or not
+    private final HashMap<String, Integer> byName; // lower case latest name -> id
+    private int size;
+    private long lastSweep;
+    private boolean isFull;         // since the last "full" log
+
+    /**
+     * @param maxPlayers Players held at once, at most 2^INDEX_BITS
+     * @param clock Wall clock, in ms
+     */
+    PlayerRegistry(int maxPlayers, LongSupplier clock){
+        if(maxPlayers < 1 || maxPlayers > 1 << INDEX_BITS) throw new IllegalArgumentException("Invalid player cap: " + maxPlayers);
+        this.maxPlayers = maxPlayers;
+        this.clock = clock;
+        this.epoch = clock.getAsLong();
+        this.lastSweep = this.epoch;
+        this.slots = new long[2 * 1024];
+        this.slotIds = new int[1024];
+        Arrays.fill(this.slotIds, NONE);
+        this.uuids = new long[2 * 256];
+        this.names = new String[256];
+        this.lastSeen = new int[256];
+        this.generations = new short[256];
+        this.free = new int[256];
+        this.byName = new HashMap<>();
+    }
+
+    /* Public Methods */
+
+    /**
+     * @param id A player's UUID as sent by the server, dashed or not, null or invalid if it has none
+     * @param name The name it's sent with, remembered as the player's latest one
+     * @return The player's id, or NONE if the table is full
+     */
+    public int intern(String id, String name){
+        if(name == null) name = "";
+        long msb, lsb;
+        long[] parsed = PARSED.get();
+        if(parseUuid(id, parsed)){
+            msb = parsed[0];
+            lsb = parsed[1];
+        } else {
+            msb = 0;
+            lsb = nameHash(name);
+        }
+        return intern(msb, lsb, name);
+    }
+
+    /**
+     * @return The player's id, or NONE if the table is full
+     */
+    public synchronized int intern(long msb, long lsb, String name){
+        long now = clock.getAsLong();
+        int slot = find(msb, lsb);
+        if(slotIds[slot] != NONE){
+            int id = slotIds[slot];
+            int index = id & INDEX_MASK;
+            lastSeen[index] = minutes(now);
+            if(!names[index].equals(name)){ // renamed, the old string can go
+                byName.remove(names[index].toLowerCase(Locale.ROOT), id);
+                names[index] = name;
+                byName.put(name.toLowerCase(Locale.ROOT), id);
+            }
+            return id;
+        }
+        if(now - lastSweep >= SWEEP_INTERVAL || (size >= maxPlayers && now - lastSweep >= FULL_SWEEP_INTERVAL)){
+            sweep(now);
+            slot = find(msb, lsb);
+        }
+        if(size >= maxPlayers){
+            if(!isFull) System.out.println("Player registry full, " + size + " players seen within a day; new players are not tracked.");
+            isFull = true;
+            return NONE;
+        }
+        isFull = false;
+
+        int index = (freeCount > 0) ? free[--freeCount] : used++;
+        if(index == names.length){
+            names = Arrays.copyOf(names, names.length * 2);
+            uuids = Arrays.copyOf(uuids, uuids.length * 2);
+            lastSeen = Arrays.copyOf(lastSeen, lastSeen.length * 2);
+            generations = Arrays.copyOf(generations, generations.length * 2);
+        }
+        int id = idOf(index);
+        size++;
+        names[index] = name;
+        byName.put(name.toLowerCase(Locale.ROOT), id);
+        uuids[index * 2] = msb;
+        uuids[index * 2 + 1] = lsb;
+        lastSeen[index] = minutes(now);
+        slots[slot * 2] = msb;
+        slots[slot * 2 + 1] = lsb;
+        slotIds[slot] = id;
+        if(size * 2 > slotIds.length) rehash(slotIds.length * 2); // keep the load under 1/2
+        return id;
+    }
+
+    /**
+     * @return The player's id, or NONE if it was never seen
+     */
+    public synchronized int lookup(long msb, long lsb){
+        return slotIds[find(msb, lsb)];
+    }
+
+    /**
+     * @param player A player's current name (any case) or UUID
+     * @return The player's id, or NONE if it was never seen
+     */
+    public int lookup(String player){
+        long[] parsed = PARSED.get();
+        if(parseUuid(player, parsed)) return lookup(parsed[0], parsed[1]);
+        synchronized (this){
+            Integer id = byName.get(player.toLowerCase(Locale.ROOT));
+            return (id == null) ? NONE : id;
+        }
+    }
+
+    /**
+     * @return The latest name of the player, or null for an unknown id
+     */
+    public synchronized String getName(int id){
+        return isLive(id) ? names[id & INDEX_MASK] : null;
+    }
+
+    /**
+     * @return The player's UUID, or null for an unknown id or one keyed by its name
+     */
+    public synchronized UUID getUuid(int id){
+        if(!isLive(id)) return null;
+        int index = id & INDEX_MASK;
+        if(uuids[index * 2] == 0 && !isUuid(index)) return null;
+        return new UUID(uuids[index * 2], uuids[index * 2 + 1]);
+    }
+
+    /**
+     * @param player A player's name (any case) or UUID (dashed or not, any case)
+     * @return The key the player is watched by: its UUID as {@link UUID#toString()} writes it, else its lower case name
+     */
+    public static String toKey(String player){
+        player = player.trim();
+        long[] parsed = PARSED.get();
+        return parseUuid(player, parsed) ? new UUID(parsed[0], parsed[1]).toString() : player.toLowerCase(Locale.ROOT);
+    }
+
+    public synchronized int size(){
+        return this.size;
+    }
+
+    /**
+     * Drops every player no sample showed for RETENTION, their indexes are reused with the next generation.
+     * @param now Wall clock, in ms
+     */
+    synchronized void sweep(long now){
+        lastSweep = now;
+        int cutoff = minutes(now - RETENTION), dropped = 0;
+        for(int index = 0; index < used; index++){
+            if(names[index] == null || lastSeen[index] >= cutoff) continue;
+            byName.remove(names[index].toLowerCase(Locale.ROOT), idOf(index));
+            names[index] = null;
+            generations[index] = (short) ((generations[index] + 1) & GENERATION_MASK);
+            if(freeCount == free.length) free = Arrays.copyOf(free, free.length * 2);
+            free[freeCount++] = index;
+            dropped++;
+        }
+        if(dropped == 0) return;
+        size -= dropped;
+        rehash(slotIds.length); // linear probing can't just clear a slot, so rebuild around the dropped ones
+    }
+
+    /* Private Methods */
+
+    // Ids keyed by a name hash have a zero msb, and so do a few (version 0) UUIDs nobody sends; tell them apart by the name.
+    private boolean isUuid(int index){
+        return uuids[index * 2 + 1] != nameHash(names[index]);
+    }
+
+    // Whether the id is the current one of its index, not one dropped since
+    private boolean isLive(int id){
+        int index = id & INDEX_MASK;
+        return id >= 0 && index < used && names[index] != null && generations[index] == id >>> INDEX_BITS;
+    }
+
+    private int idOf(int index){
+        return (generations[index] << INDEX_BITS) | index;
+    }
+
+    private int minutes(long millis){
+        return (int) Math.floorDiv(millis - epoch, 60_000L);
+    }
+
+    // Slot of the UUID, or of the free slot it would go in.
+    private int find(long msb, long lsb){
+        int mask = slotIds.length - 1;
+        int slot = mix(msb, lsb) & mask;
+        while (slotIds[slot] != NONE && (slots[slot * 2] != msb || slots[slot * 2 + 1] != lsb)) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    // Rebuilds the slots at the given size, without the ids dropped since
+    private void rehash(int capacity){
+        long[] oldSlots = slots;
+        int[] oldIds = slotIds;
+        slots = new long[capacity * 2];
+        slotIds = new int[capacity];
+        Arrays.fill(slotIds, NONE);
+        for(int i = 0; i < oldIds.length; i++){
+            if(oldIds[i] == NONE || !isLive(oldIds[i])) continue;
+            int slot = find(oldSlots[i * 2], oldSlots[i * 2 + 1]);
+            slots[slot * 2] = oldSlots[i * 2];
+            slots[slot * 2 + 1] = oldSlots[i * 2 + 1];
+            slotIds[slot] = oldIds[i];
+        }
+    }
+
+    // Murmur3 finalizer over both halves
+    private static int mix(long msb, long lsb){
+        long h = msb * 31 + lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * Parses a UUID, dashed or not, into parsed[0] (msb) and parsed[1] (lsb), without allocating.
+     * @return False if it isn't a UUID, or is the nil UUID
+     */
+    static boolean parseUuid(String id, long[] parsed){
+        if(id == null || (id.length() != 36 && id.length() != 32)) return false;
+        long msb = 0, lsb = 0;
+        int digits = 0;
+        for(int i = 0; i < id.length(); i++){
+            char c = id.charAt(i);
+            if(c == '-' && id.length() == 36) continue;
+            int value = Character.digit(c, 16);
+            if(value < 0) return false;
+            if(digits < 16) msb = (msb << 4) | value;
+            else lsb = (lsb << 4) | value;
+            digits++;
+        }
+        if(digits != 32 || (msb == 0 && lsb == 0)) return false;
+        parsed[0] = msb;
+        parsed[1] = lsb;
+        return true;
+    }
+
+    // FNV-1a, never 0 so it can't collide with the nil UUID
+    private static long nameHash(String name){
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0; i < name.length(); i++){
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return (hash == 0) ? 1 : hash;
+    }
+}
@@ -0,0 +1,64 @@
+package MCHerald.player;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of players from a status response's sample, as a sorted array of {@link PlayerRegistry} ids.
+ * Comparing two samples is a merge-walk over ints (see {@link PresenceDiff}), and the names
+ * and UUIDs are held once by the registry rather than by every response.
+ */
+public class PlayerSet {
+
+    public static final PlayerSet EMPTY = new PlayerSet(new int[0]);
+
+    private final int[] ids; // ascending, no duplicates
+
+    private PlayerSet(int[] ids){
+        this.ids = ids;
+    }
+
+    /**
+     * @param ids Registry ids, in any order and possibly repeated; sorted in place
+     * @param count How many of the array's first ids belong to the set
+     * @return The set of those ids, NONE dropped
+     */
+    public static PlayerSet of(int[] ids, int count){
+        if(count == 0) return EMPTY;
+        Arrays.sort(ids, 0, count);
+        int unique = 0;
+        for(int i = 0; i < count; i++){
+            if(ids[i] == PlayerRegistry.NONE || (unique > 0 && ids[i] == ids[unique - 1])) continue;
+            ids[unique++] = ids[i];
+        }
+        return (unique == 0) ? EMPTY : new PlayerSet(Arrays.copyOf(ids, unique));
+    }
+
+    /**
+     * @return True if both sets hold exactly the same players
+     */
+    public boolean hasSamePlayers(PlayerSet other){
+        return Arrays.equals(this.ids, other.ids);
+    }
+
+    public boolean contains(int id){
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    /* Getters */
+
+    public int size(){
+        return this.ids.length;
+    }
+
+    /**
+     * @return Registry id of the index-th player, in ascending order
+     */
+    public int getId(int index){
+        return this.ids[index];
+    }
+
+    // The player's latest name, as known to the registry, null once it dropped the player
+    public String getName(int index){
+        return PlayerRegistry.INSTANCE.getName(this.ids[index]);
+    }
+}
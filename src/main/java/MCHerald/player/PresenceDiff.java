@@ -0,0 +1,89 @@
+package MCHerald.player;
+
+/**
+ * Who joined and who left between two samples of one server, by a single merge-walk over their sorted player ids.
+ * The results are indexes into the compared sets, kept in int arrays which are reused (and only grown)
+ * from one diff to the next, so a diff allocates nothing once warmed up. Not thread safe: one per server.
+ */
+public class PresenceDiff {
+
+    private PlayerSet before = PlayerSet.EMPTY, after = PlayerSet.EMPTY;
+    private int[] joined = new int[16], left = new int[16]; // indexes into after, before
+    private int joinedCount, leftCount;
+
+    /* Public Methods */
+
+    /**
+     * Replaces the last result with the diff of the given samples.
+     * @param before The earlier sample, null for none
+     * @param after The later sample, null for none
+     * @return This, for chaining
+     */
+    public PresenceDiff compute(PlayerSet before, PlayerSet after){
+        this.before = (before == null) ? PlayerSet.EMPTY : before;
+        this.after = (after == null) ? PlayerSet.EMPTY : after;
+        if(joined.length < this.after.size()) joined = new int[this.after.size()];
+        if(left.length < this.before.size()) left = new int[this.before.size()];
+        joinedCount = leftCount = 0;
+
+        int i = 0, j = 0;
+        while (i < this.before.size() && j < this.after.size()){
+            int order = Integer.compare(this.before.getId(i), this.after.getId(j));
+            if(order < 0) left[leftCount++] = i++;
+            else if(order > 0) joined[joinedCount++] = j++;
+            else {
+                i++;
+                j++;
+            }
+        }
+        while (i < this.before.size()) left[leftCount++] = i++;
+        while (j < this.after.size()) joined[joinedCount++] = j++;
+        return this;
+    }
+
+    public boolean isEmpty(){
+        return joinedCount == 0 && leftCount == 0;
+    }
+
+    /* Getters */
+
+    public int getJoinedCount(){
+        return this.joinedCount;
+    }
+
+    public int getLeftCount(){
+        return this.leftCount;
+    }
+
+    /**
+     * @param n From 0 to {@link #getJoinedCount()} (excluded)
+     * @return Index of the n-th joined player in the later sample
+     */
+    public int getJoined(int n){
+        return this.joined[n];
+    }
+
+    /**
+     * @param n From 0 to {@link #getLeftCount()} (excluded)
+     * @return Index of the n-th player that left in the earlier sample
+     */
+    public int getLeft(int n){
+        return this.left[n];
+    }
+
+    public String getJoinedName(int n){
+        return this.after.getName(joined[n]);
+    }
+
+    public String getLeftName(int n){
+        return this.before.getName(left[n]);
+    }
+
+    public PlayerSet getBefore(){
+        return this.before;
+    }
+
+    public PlayerSet getAfter(){
+        return this.after;
+    }
+}
@@ -0,0 +1,104 @@
+package MCHerald.player;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index from player to the servers whose sample last showed them, so "where is this player"
+ * is one lookup instead of a scan of every server's last response.
+ * Each server's update is diffed against the set the index holds for it, and only the players
+ * who joined or left are touched. Servers may be updated concurrently, but one server by one thread at a time.
+ * Busy servers only sample a dozen of their players, so there a player may come and go from the index.
+ */
+public class PresenceIndex {
+
+    /**
+     * Told when a player goes from no server at all to one, from the updating thread.
+     */
+    public interface Listener {
+        void onOnline(int playerId, String server);
+    }
+
+    private static final ThreadLocal<PresenceDiff> DIFFS = ThreadLocal.withInitial(PresenceDiff::new);
+
+    private final ConcurrentHashMap<Integer, Set<String>> serversByPlayer;
+    private final ConcurrentHashMap<String, PlayerSet> playersByServer;
+    private volatile Listener listener;
+
+    public PresenceIndex(){
+        this.serversByPlayer = new ConcurrentHashMap<>();
+        this.playersByServer = new ConcurrentHashMap<>();
+    }
+
+    /* Public Methods */
+
+    /**
+     * @param server The server's UUID
+     * @param players The players its latest sample showed, null for none
+     */
+    public void update(String server, PlayerSet players){
+        if(players == null) players = PlayerSet.EMPTY;
+        PlayerSet last = playersByServer.put(server, players);
+        if(last == players) return;
+
+        PresenceDiff diff = DIFFS.get().compute(last, players);
+        for(int n = 0; n < diff.getLeftCount(); n++) removeFrom(last.getId(diff.getLeft(n)), server);
+        for(int n = 0; n < diff.getJoinedCount(); n++) addTo(players.getId(diff.getJoined(n)), server);
+    }
+
+    /**
+     * Drops every player of the server, ie once it's deleted.
+     */
+    public void remove(String server){
+        PlayerSet last = playersByServer.remove(server);
+        if(last == null) return;
+        for(int i = 0; i < last.size(); i++) removeFrom(last.getId(i), server);
+    }
+
+    /**
+     * @return UUIDs of the servers the player was last seen on, empty if none; a live view
+     */
+    public Set<String> getServers(int playerId){
+        Set<String> servers = serversByPlayer.get(playerId);
+        return (servers == null) ? Collections.emptySet() : Collections.unmodifiableSet(servers);
+    }
+
+    /**
+     * @param player A player's name (any case) or UUID
+     */
+    public Set<String> getServers(String player){
+        return getServers(PlayerRegistry.INSTANCE.lookup(player));
+    }
+
+    public boolean isOnline(int playerId){
+        return serversByPlayer.containsKey(playerId);
+    }
+
+    public void setListener(Listener listener){
+        this.listener = listener;
+    }
+
+    /* Private Methods */
+
+    private void addTo(int playerId, String server){
+        boolean[] isFirst = {false};
+        serversByPlayer.compute(playerId, (id, servers) -> {
+            if(servers == null){
+                servers = ConcurrentHashMap.newKeySet();
+                isFirst[0] = true;
+            }
+            servers.add(server);
+            return servers;
+        });
+        Listener listener = this.listener;
+        if(isFirst[0] && listener != null) listener.onOnline(playerId, server);
+    }
+
+    private void removeFrom(int playerId, String server){
+        serversByPlayer.computeIfPresent(playerId, (id, servers) -> {
+            servers.remove(server);
+            return servers.isEmpty() ? null : servers;
+        });
+    }
+}
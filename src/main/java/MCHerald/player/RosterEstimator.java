@@ -0,0 +1,185 @@
+package MCHerald.player;
+
+import java.util.Arrays;
+
+/**
+ * Estimates a server's full roster out of the capped (and on most servers randomized) samples its pings return.
+ * Every sampled player is kept with the ping and time it was last seen. A player no longer sampled is only
+ * dropped once it missed so many samples in a row that, were it still online, that would happen with less
+ * than MISS_PROBABILITY chance; and once the roster outgrows players.online (by OVERSHOOT_PERCENT), the stalest go first.
+ * Misses only count pings, so after a gap (GAP_FACTOR times the last interval, ie the breaker was open or the interval
+ * grew) every player not sampled again is dropped: anyone may have left meanwhile, and the roster converges anew.
+ * A complete sample (no more players online than sampled) simply replaces the roster.
+ * Memory is bounded by MAX_PLAYERS per server. Not thread safe: one per server.
+ */
+public class RosterEstimator {
+
+    public static final int MAX_PLAYERS = 1024;
+    public static final double CONVERGED = 0.9; // completeness past which a newly sampled player most likely just joined
+    static final double MISS_PROBABILITY = 0.001;
+    static final int MAX_MISSES = 1000; // pings, for a sample far smaller than the player count
+    // How far the roster may outgrow players.online before the stalest are dropped; it does lag behind those who left,
+    // and dropping right at players.online drops players still online, who then "join" again when sampled
+    static final int OVERSHOOT_PERCENT = 25;
+    static final int GAP_FACTOR = 4;
+
+    private int[] ids = new int[16];        // ascending
+    private long[] seenPing = new long[16]; // ping number each player was last sampled at
+    private long[] seenAt = new long[16];   // ms, wall clock
+    private int size;
+    private int[] mergedIds = new int[16];  // scratch of the merge, swapped with the above after each update
+    private long[] mergedPing = new long[16], mergedAt = new long[16];
+
+    private long pings;
+    private long lastAt, interval; // ms, of the last update and since the one before
+    private int online;
+    private PlayerSet roster = PlayerSet.EMPTY;
+
+    /* Public Methods */
+
+    /**
+     * Folds the sample of a ping into the roster.
+     * @param sample The players the server sampled, null for none
+     * @param online The server's players.online
+     * @param now The ping's time, in ms
+     * @return The estimated roster, the same instance as last time if it didn't change
+     */
+    public PlayerSet update(PlayerSet sample, int online, long now){
+        if(sample == null) sample = PlayerSet.EMPTY;
+        this.online = Math.max(0, online);
+        pings++;
+        boolean isGap = lastAt > 0 && interval > 0 && now - lastAt > GAP_FACTOR * interval;
+        if(lastAt > 0) interval = now - lastAt;
+        lastAt = now;
+        boolean isChanged;
+        if(sample.size() >= this.online) {
+            isChanged = replace(sample, now);
+            isChanged |= evictStalest(MAX_PLAYERS);
+        } else {
+            isChanged = merge(sample, now);
+            isChanged |= expire(missesToExpire(sample.size(), this.online), isGap ? now : Long.MIN_VALUE);
+            isChanged |= evictStalest((int) Math.min(this.online + (long) this.online * OVERSHOOT_PERCENT / 100, MAX_PLAYERS));
+        }
+        if(isChanged) roster = PlayerSet.of(Arrays.copyOf(ids, size), size);
+        return roster;
+    }
+
+    /**
+     * @return The share of the online players the roster holds, from 0 to 1
+     */
+    public double getCompleteness(){
+        return (online == 0) ? 1 : Math.min(1, (double) size / online);
+    }
+
+    public PlayerSet getRoster(){
+        return this.roster;
+    }
+
+    /**
+     * Misses in a row it takes for an online player to be dropped: the least k where (1 - sampled / online)^k < MISS_PROBABILITY
+     */
+    static int missesToExpire(int sampled, int online){
+        if(sampled >= online) return 1;
+        if(sampled <= 0) return MAX_MISSES;
+        double missed = 1 - (double) sampled / online;
+        return (int) Math.min(MAX_MISSES, Math.max(1, Math.ceil(Math.log(MISS_PROBABILITY) / Math.log(missed))));
+    }
+
+    /* Private Methods */
+
+    private boolean replace(PlayerSet sample, long now){
+        boolean isChanged = size != sample.size();
+        ensureCapacity(sample.size());
+        for(int i = 0; i < sample.size(); i++){
+            isChanged |= ids[i] != sample.getId(i);
+            ids[i] = sample.getId(i);
+            seenPing[i] = pings;
+            seenAt[i] = now;
+        }
+        size = sample.size();
+        return isChanged;
+    }
+
+    // Merge-walk of the roster and the (sorted) sample, into the scratch arrays which then become the roster.
+    private boolean merge(PlayerSet sample, long now){
+        int capacity = size + sample.size();
+        if(mergedIds.length < capacity){
+            int length = Math.max(capacity, mergedIds.length * 2);
+            mergedIds = new int[length];
+            mergedPing = new long[length];
+            mergedAt = new long[length];
+        }
+        int i = 0, j = 0, n = 0;
+        boolean isChanged = false;
+        while (i < size || j < sample.size()){
+            int order = (i == size) ? 1 : (j == sample.size()) ? -1 : Integer.compare(ids[i], sample.getId(j));
+            if(order < 0){
+                mergedIds[n] = ids[i];
+                mergedPing[n] = seenPing[i];
+                mergedAt[n++] = seenAt[i++];
+                continue;
+            }
+            if(order > 0) isChanged = true; // a player not on the roster yet
+            else i++;
+            mergedIds[n] = sample.getId(j++);
+            mergedPing[n] = pings;
+            mergedAt[n++] = now;
+        }
+        swap();
+        size = n;
+        return isChanged;
+    }
+
+    // Drops the players that missed too many samples in a row, or were last sampled before staleBefore (ms).
+    private boolean expire(int misses, long staleBefore){
+        int n = 0;
+        for(int i = 0; i < size; i++){
+            if(pings - seenPing[i] >= misses || seenAt[i] < staleBefore) continue;
+            ids[n] = ids[i];
+            seenPing[n] = seenPing[i];
+            seenAt[n++] = seenAt[i];
+        }
+        boolean isChanged = n != size;
+        size = n;
+        return isChanged;
+    }
+
+    // Drops the least recently sampled players until the roster fits.
+    private boolean evictStalest(int limit){
+        boolean isChanged = false;
+        while (size > limit){
+            long stalest = Long.MAX_VALUE;
+            for(int i = 0; i < size; i++) stalest = Math.min(stalest, seenPing[i]);
+            int n = 0;
+            for(int i = 0; i < size; i++){
+                if(seenPing[i] == stalest && size - (i - n) > limit) continue; // stop dropping once it fits
+                ids[n] = ids[i];
+                seenPing[n] = seenPing[i];
+                seenAt[n++] = seenAt[i];
+            }
+            isChanged = true;
+            size = n;
+        }
+        return isChanged;
+    }
+
+    private void swap(){
+        int[] swappedIds = ids;
+        ids = mergedIds;
+        mergedIds = swappedIds;
+        long[] swappedPing = seenPing;
+        seenPing = mergedPing;
+        mergedPing = swappedPing;
+        long[] swappedAt = seenAt;
+        seenAt = mergedAt;
+        mergedAt = swappedAt;
+    }
+
+    private void ensureCapacity(int capacity){
+        if(ids.length >= capacity) return;
+        int length = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, length);
+        seenPing = Arrays.copyOf(seenPing, length);
+        seenAt = Arrays.copyOf(seenAt, length);
+    }
+}
@@ -6,12 +6,28 @@ import javax.swing.*;
 import java.awt.*;
 import java.io.*;
 import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class Constants {
 
+    public static final boolean DEBUG = Boolean.getBoolean("mcherald.debug"); // -Dmcherald.debug=true prints the ping and notification metrics
     public static final ServerInfo ERROR = new ServerInfo.ServerDummy();
     public static final Font APP_FONT = new Font("Serif", Font.PLAIN, 14);
     public static final int SERVER_TIMEOUT = 7000;
+    public static final int PING_THREADS = 4;
+    public static final int PING_QUEUE_CAPACITY = 10_000;
+    // Connect budget of the ping engine (see ConnectGovernor), 0 per subnet for no subnet cap; 200/s is 12k hosts a minute
+    public static final double PING_CONNECTS_PER_SECOND = 200;
+    public static final int PING_CONNECT_BURST = 200;
+    public static final int PING_MAX_IN_FLIGHT = 256;
+    public static final int PING_MAX_PER_SUBNET = 16;
+    public static final int NOTIFICATION_QUEUE_CAPACITY = 1_000;
+    public static final int PRESENCE_BUS_CAPACITY = 4_096; // events held for the bus' subscribers
+    public static final Path WEBHOOK_SPOOL = Paths.get(System.getProperty("user.home"), ".mcherald", "webhook-spool");
+    public static final int WEBHOOK_MAX_CONCURRENT = 4;
+    public static final int WEBHOOK_QUEUE_CAPACITY = 1_000;
+    public static final int ANOMALY_LARGE_SERVER = 50; // players, from which count changes are only told when anomalous
 
     public static final class COLUMNS {
         public static final int NOTIFICATION_STATUS = 0;
@@ -19,9 +35,13 @@ public class Constants {
         public static final int IP = 2;
         public static final int FREQUENCY = 3;
         public static final int ONLINE_OUT_OF_MAX = 4;
-        public static final int UUID = 5;
+        public static final int LATENCY = 5;
+        public static final int STATUS = 6;
+        public static final int UUID = 7;
     }
-    public static final int DEFAULT_FREQUENCY = 30;
+    public static final int DEFAULT_FREQUENCY = 30 * 60; // seconds
+    public static final int MIN_FREQUENCY = 5;
+    public static final int MAX_FREQUENCY = 24 * 60 * 60; // seconds
     public static final int MC_PORT = 25565;
 
     //Obtain the image URL
@@ -0,0 +1,146 @@
+package MCHerald.util;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Content-addressed store of server favicons, keyed by a hash of their base64 payload.
+ * Identical icons (the same server every ping, or many servers sharing one) are decoded only once,
+ * on a background thread, into a small scaled Image. The least recently used icons are evicted past MAX_ICONS.
+ */
+public class FaviconCache {
+
+    public static final FaviconCache INSTANCE = new FaviconCache();
+
+    public static final int ICON_SIZE = 16;
+    private static final int MAX_ICONS = 512;
+    private static final String DATA_PREFIX = "base64,";
+
+    private final LinkedHashMap<Long, Image> icons; // access ordered, guarded by itself
+    private final ConcurrentHashMap<Long, Boolean> decoding;
+    private final ExecutorService decoder;
+    private volatile Runnable onDecoded;
+
+    private FaviconCache(){
+        this.icons = new LinkedHashMap<Long, Image>(64, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Image> eldest){
+                return size() > MAX_ICONS;
+            }
+        };
+        this.decoding = new ConcurrentHashMap<>();
+        this.decoder = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "FaviconDecoder");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /* Public Methods */
+
+    /**
+     * 64-bit FNV-1a of the favicon's data URI, used as its content address.
+     * @param favicon The favicon string as sent by the server
+     * @return The key, never 0 (which stands for "no favicon")
+     */
+    public static long hash(String favicon){
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0; i < favicon.length(); i++){
+            hash ^= favicon.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return (hash == 0) ? 1 : hash;
+    }
+
+    /**
+     * Same as {@link #hash(String)}, over the favicon's raw bytes as they sit in the JSON payload,
+     * so a known favicon needn't be decoded into a String first. Equal to the String's hash for an
+     * ASCII string without escapes, which a base64 data URI is.
+     * @param json Holds the favicon between from (inclusive) and to (exclusive), left untouched
+     */
+    public static long hash(ByteBuffer json, int from, int to){
+        long hash = 0xcbf29ce484222325L;
+        for(int i = from; i < to; i++){
+            hash ^= json.get(i) & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return (hash == 0) ? 1 : hash;
+    }
+
+    /**
+     * Queues the favicon for decoding, unless an icon with the same hash is already stored or on its way.
+     * The caller is free to drop the string right after.
+     * @param hash The favicon's {@link #hash(String)}
+     * @param favicon The favicon's data URI
+     */
+    public void offer(long hash, String favicon){
+        if(hash == 0 || contains(hash) || decoding.putIfAbsent(hash, Boolean.TRUE) != null) return;
+        decoder.execute(() -> {
+            try {
+                Image icon = decode(favicon);
+                if(icon != null) synchronized (icons) { icons.put(hash, icon); }
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("Could not decode favicon: " + e.getMessage());
+            } finally {
+                decoding.remove(hash);
+            }
+            Runnable listener = onDecoded;
+            if(listener != null) listener.run();
+        });
+    }
+
+    /**
+     * @param hash The favicon's {@link #hash(String)}
+     * @return The decoded, scaled icon, or null if it is unknown or still being decoded
+     */
+    public Image get(long hash){
+        if(hash == 0) return null;
+        synchronized (icons) {
+            return icons.get(hash);
+        }
+    }
+
+    /**
+     * @param onDecoded Called from the decoder thread whenever a new icon becomes available
+     */
+    public void setOnDecoded(Runnable onDecoded){
+        this.onDecoded = onDecoded;
+    }
+
+    /**
+     * @param hash The favicon's {@link #hash(String)}
+     * @return Whether the icon is stored or on its way, ie it needn't be offered again
+     */
+    public boolean contains(long hash){
+        if(decoding.containsKey(hash)) return true;
+        synchronized (icons) {
+            return icons.containsKey(hash);
+        }
+    }
+
+    /* Private Methods */
+
+    private static Image decode(String favicon) throws IOException {
+        int start = favicon.indexOf(DATA_PREFIX);
+        String base64 = (start < 0) ? favicon : favicon.substring(start + DATA_PREFIX.length());
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(Base64.getMimeDecoder().decode(base64)));
+        if(image == null) return null;
+
+        BufferedImage scaled = new BufferedImage(ICON_SIZE, ICON_SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, ICON_SIZE, ICON_SIZE, null);
+        g.dispose();
+        return scaled;
+    }
+}
@@ -3,6 +3,9 @@ package MCHerald.util;
 public class Language {
 
     public static final String SERVER_MAP_KEY = "ServerMap";
+    public static final String WATCHED_PLAYERS_KEY = "WatchedPlayers";
+    public static final String WEBHOOKS_KEY = "Webhooks";
+    public static final String ALERT_RULES_KEY = "AlertRules";
     public static final String ICON_ADD_DESCRIPTION = "MCHerald Icon";
     public static final String ICON_APP_DESCRIPTION = "Add Server Icon";
     public static final String ICON_NOT_FOUND = "Icon file is missing.";
@@ -22,6 +25,9 @@ public class Language {
         // Menu Items
         public static final String NOTIFICATIONS = "Notifications";
         public static final String SERVERS_LIST = "Watched Servers";
+        public static final String PLAYERS_LIST = "Watched Players";
+        public static final String WEBHOOKS_LIST = "Webhooks";
+        public static final String RULES_LIST = "Alert Rules";
         public static final String SERVER_TABLE = "Open Server List";
         public static final String ABOUT = "About";
         public static final String EXIT = "Exit";
@@ -33,8 +39,14 @@ public class Language {
         // Prompts / Form Labels
         public static final String NAME = "Name: ";
         public static final String HOST = "Server Host/IP: ";
-        public static final String FREQUENCY = "Frequency (minutes): ";
+        public static final String FREQUENCY = "Frequency (seconds): ";
+        public static final String MIN_FREQUENCY = "Adaptive minimum (seconds, optional): ";
         public static final String SUBMIT = "Add";
+
+        // Errors
+        public static final String INVALID_TITLE = "Invalid Server";
+        public static final String FREQUENCY_ERROR_FORMAT = "The frequency must be a whole number of seconds, from %d to %d.";
+        public static final String MIN_FREQUENCY_ERROR_FORMAT = "The adaptive minimum must be a whole number of seconds, from %d up to below the frequency.";
     }
 
     public static class DELETE_SERVER {
@@ -63,8 +75,48 @@ public class Language {
         public static final String DELETE = "Delete";
         public static final String ABOUT = "About";
         public static final String TITLE = "Servers Settings";
-        public static final String[] COLUMN_NAMES = {"Notifications", "Name", "Host / IP", "Frequency (Minutes)", "Online", "UUID"};
+        public static final String[] COLUMN_NAMES = {"Notifications", "Name", "Host / IP", "Frequency (Seconds)", "Online", "Ping", "Status", "UUID"};
         public static final String PLAYER_COUNT_ERROR = "?? / ??";
+        public static final String LATENCY_UNKNOWN = "--";
+        public static final String ROSTER_FORMAT = "%d/%d (%d%% known)";
+    }
+
+    public static class WATCH_PLAYER {
+        public static final String TITLE = "Watch Player";
+        public static final String PROMPT = "Name or UUID of the player:";
+        public static final String NOTIFICATION_TITLE = "Watched Player";
+        public static final String ONLINE_FORMAT = "%s is online on %s!";
+    }
+
+    public static class WEBHOOK {
+        public static final String TITLE = "Add Webhook";
+        public static final String PROMPT = "URL to POST notifications to:";
+        public static final String INVALID_FORMAT = "Not an http(s) URL: %s";
+    }
+
+    public static class NOTIFICATION {
+        public static final String SUMMARY_CAPTION = "MC Player Herald";
+        public static final String SUMMARY_JOINED_FORMAT = "%d servers: %d players joined";
+        public static final String SUMMARY_CHANGED_FORMAT = "%d servers changed";
+        public static final String SUMMARY_ALERTS_FORMAT = "%d more alerts";
+        public static final String JOINED_FORMAT = "%d players have logged in!";
+    }
+
+    public static class ALERT_RULE {
+        public static final String TITLE = "Add Alert Rule";
+        public static final String PROMPT = "Rule, such as \"online >= 50\", \"player Notch joins\", \"down for 5 min\",\n"
+                + "\"version changes\" or \"motd matches maintenance\":";
+        public static final String INVALID_FORMAT = "Not an alert rule: %s";
+        public static final String ONLINE_FORMAT = "%d players are online (%s)";
+        public static final String DOWN_FORMAT = "Server is down (%s)";
+        public static final String VERSION_FORMAT = "Version changed from %s to %s";
+        public static final String MOTD_FORMAT = "MOTD: %s";
+    }
+
+    public static class ANOMALY {
+        public static final String SURGE_FORMAT = "Player surge: %d online, usually about %d.";
+        public static final String DROP_FORMAT = "Player drop: %d online, usually about %d.";
+        public static final String UNUSUAL_FORMAT = "Unusual for this hour: %d online, usually about %d.";
     }
 
     public static class SERVER {
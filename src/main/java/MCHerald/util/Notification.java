@@ -4,12 +4,26 @@ import java.awt.*;
 
 // wrapper class for a system tray notification.
 public class Notification {
-    public String caption, text;
+    public String key, caption, text;
     public TrayIcon.MessageType messageType;
+    public int joined;     // players it reports as joined, summed up when notifications are merged
+    public String names;   // of the joined players, ", " separated; null if not all of them are known
+    public long createdAt; // ms, wall clock
 
-    Notification(String caption, String text, TrayIcon.MessageType messageType){
+    public Notification(String caption, String text, TrayIcon.MessageType messageType){
+        this(caption, caption, text, messageType, 0);
+    }
+
+    /**
+     * @param key What the notification is about (ie a server's UUID); a later one of the same key supersedes it
+     * @param joined How many players it reports as joined
+     */
+    public Notification(String key, String caption, String text, TrayIcon.MessageType messageType, int joined){
+        this.key = key;
         this.caption = caption;
         this.text = text;
         this.messageType = messageType;
+        this.joined = joined;
+        this.createdAt = System.currentTimeMillis();
     }
 }
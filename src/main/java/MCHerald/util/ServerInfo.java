@@ -1,38 +1,67 @@
 package MCHerald.util;
 
 import MCHerald.MCHerald;
+import MCHerald.alert.AlertRule;
+import MCHerald.alert.AlertRules;
+import MCHerald.alert.CountAnomalyDetector;
+import MCHerald.alert.PresenceBus;
+import MCHerald.alert.PresenceEvent;
+import MCHerald.ping.CircuitBreaker;
+import MCHerald.ping.PingCoalescer;
 import MCHerald.ping.ServerPing;
 import MCHerald.ping.StatusResponse;
+import MCHerald.player.PlayerSet;
+import MCHerald.player.PresenceDiff;
+import MCHerald.player.RosterEstimator;
 
 import java.awt.*;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.net.InetSocketAddress;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
 import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public class ServerInfo implements Serializable {
+    private static final long serialVersionUID = -8699333942005313363L; // as computed for the first saved configs, so they still load
+
     private String host, name;
     private boolean state;
     private int frequency;
+    private boolean isFrequencyInSeconds; // false in configs saved while the frequency was in minutes
+    private boolean adaptive;
+    private int minFrequency;
     private final String UUID;
 
-    private transient StatusResponse lastResponse;
+    private transient volatile StatusResponse lastResponse;
+    private transient volatile long lastPingTime;
+    private transient volatile int interval; // current adaptive interval in seconds, within [minFrequency, frequency]
     private transient ServerPing serverPinger;
+    private transient CircuitBreaker breaker;
     private transient MCHerald herald;
+    private transient PresenceDiff presence; // reused by every diff of this server's rosters
+    private transient RosterEstimator roster;
+    private transient volatile PlayerSet lastRoster, thisRoster; // estimates before and after the last successful ping
+    private transient boolean isRosterConverged;        // whether lastRoster was complete enough to tell joins apart
+    private transient boolean isUp;                     // whether the last ping succeeded, as published on the bus
+    private transient long downSince, downtime;         // ms, when the pings started failing and for how long as of the last one; 0 if up
+    private transient AlertRules.Change alertChange;    // reused by every rule evaluation of this server
+    private transient CountAnomalyDetector anomalies;
 
     /* Constructors */
-    public ServerInfo(MCHerald herald, String host, String name, boolean state, int frequencyMinutes) {
+    public ServerInfo(MCHerald herald, String host, String name, boolean state, int frequencySeconds) {
         this.host = host;
         this.name = name;
         this.state = state;
         this.lastResponse = null;
         this.herald = herald;
         this.UUID = herald.requestUUID();
-        this.serverPinger = new ServerPing(new InetSocketAddress(host, Constants.MC_PORT));
-        this.setFrequency(frequencyMinutes);
-        new Thread(this::refresh).start();
+        this.serverPinger = new ServerPing(InetSocketAddress.createUnresolved(host, Constants.MC_PORT)); // resolved per ping
+        this.breaker = new CircuitBreaker();
+        this.isFrequencyInSeconds = true;
+        this.setFrequency(frequencySeconds);
+        this.refreshAsync(PingCoalescer.FRESHNESS);
     }
 
     private ServerInfo(){
@@ -48,27 +77,73 @@ public class ServerInfo implements Serializable {
         serverData[Constants.COLUMNS.NAME] = getName();
         serverData[Constants.COLUMNS.IP] = getHost();
         serverData[Constants.COLUMNS.FREQUENCY] = getFrequency();///60/1000;
-        if(lastResponse != null)
+        if(lastResponse != null && getRosterCompleteness() < 1)
+            serverData[Constants.COLUMNS.ONLINE_OUT_OF_MAX] = String.format(Language.TABLE.ROSTER_FORMAT,
+                    lastResponse.getPlayers().getOnline(), lastResponse.getPlayers().getMax(), Math.round(getRosterCompleteness() * 100));
+        else if(lastResponse != null)
             serverData[Constants.COLUMNS.ONLINE_OUT_OF_MAX] = lastResponse.getPlayers().getOnline() + "/" + lastResponse.getPlayers().getMax();
         else
             serverData[Constants.COLUMNS.ONLINE_OUT_OF_MAX] = Language.TABLE.PLAYER_COUNT_ERROR;
+        serverData[Constants.COLUMNS.LATENCY] = (getLatency() < 0) ? Language.TABLE.LATENCY_UNKNOWN : getLatency() + " ms";
+        serverData[Constants.COLUMNS.STATUS] = (breaker == null) ? "" : breaker.toString();
         serverData[Constants.COLUMNS.UUID] = getUUID();
         return serverData;
     }
 
+    /**
+     * Hands a server loaded from the config the herald it pings through (it isn't saved), and starts its first ping
+     */
+    public void attach(MCHerald herald) {
+        this.herald = herald;
+        this.refreshAsync(PingCoalescer.FRESHNESS);
+    }
+
     // Refresh BLOCKs calling thread until time-out or response
     public void refresh(){
         try {
-            lastResponse = serverPinger.fetchData();
+            refreshAsync().join();
         } catch (Exception ignore) {}
     }
 
+    // Pings through the herald's shared engine, lastResponse is only replaced on success.
+    // An unchanged payload hands back the very same lastResponse, so callers can compare by identity.
+    // DNS (and SRV) comes from the herald's caching resolver, so a lookup never blocks a ping thread.
+    public CompletableFuture<StatusResponse> refreshAsync(){
+        return refreshAsync(0);
+    }
+
+    // Same as refreshAsync(), but a result of the same host no older than maxAge ms (ie pinged for another entry) is reused.
+    // A ping of the host already running is always joined rather than duplicated.
+    public CompletableFuture<StatusResponse> refreshAsync(long maxAge){
+        StatusResponse previous = this.lastResponse;
+        return herald.getHostResolver().resolve(host)
+                .thenCompose(resolution -> {
+                    serverPinger.setAddresses(resolution.getAddresses());
+                    return serverPinger.fetchDataAsync(herald.getPingCoalescer(), previous, maxAge);
+                })
+                .whenComplete((response, e) -> {
+                    if(response == null) {
+                        breaker.recordFailure(e);
+                        return;
+                    }
+                    breaker.recordSuccess();
+                    lastResponse = response;
+                    lastPingTime = System.currentTimeMillis();
+                });
+    }
+
     /* Getters & Setters */
 
     public String getName() {
         return this.name;
     }
 
+    // Decoded off the EDT by the FaviconCache, null until then (or if the server has none)
+    public Image getFavicon() {
+        StatusResponse response = this.lastResponse;
+        return (response == null) ? null : FaviconCache.INSTANCE.get(response.getFaviconHash());
+    }
+
     public void setName(String name){
         this.name = name;
     }
@@ -78,6 +153,7 @@ public class ServerInfo implements Serializable {
     }
 
     public void setHost(String host) {
+        if(herald != null) herald.getHostResolver().invalidate(this.host);
         this.host = host;
     }
 
@@ -85,15 +161,42 @@ public class ServerInfo implements Serializable {
         return this.frequency;
     }
 
-    public void setFrequency(int frequencyMinutes){
-        if(frequencyMinutes < 1) this.frequency = Constants.DEFAULT_FREQUENCY;
-        this.frequency = frequencyMinutes;// * 60 * 1_000;
+    // In seconds, clamped to [MIN_FREQUENCY, MAX_FREQUENCY]. In adaptive mode this is the ceiling.
+    public void setFrequency(int frequencySeconds){
+        this.frequency = Math.max(Constants.MIN_FREQUENCY, Math.min(frequencySeconds, Constants.MAX_FREQUENCY));
+        if(this.adaptive && this.minFrequency >= this.frequency) this.adaptive = false;
         //if(this.timer != null) this.timer.cancel();
         //this.timer = new Timer(("Server: "+name), true);
         //this.timer.scheduleAtFixedRate(new RefreshTask(), frequency, frequency);
         //new Thread(this::refresh).start();
     }
 
+    /**
+     * Seconds until the next ping; the frequency, unless adaptive mode has shortened it
+     */
+    public int getInterval() {
+        int interval = this.interval;
+        return (adaptive && interval > 0) ? Math.max(minFrequency, Math.min(interval, frequency)) : frequency;
+    }
+
+    public boolean isAdaptive() {
+        return this.adaptive;
+    }
+
+    public int getMinFrequency() {
+        return this.minFrequency;
+    }
+
+    /**
+     * Turns on adaptive mode, the interval then moves between the given minimum and the frequency
+     * @param minFrequencySeconds The lower bound, adaptive mode is turned off if it isn't below the frequency
+     */
+    public void setAdaptive(int minFrequencySeconds) {
+        this.adaptive = minFrequencySeconds >= Constants.MIN_FREQUENCY && minFrequencySeconds < this.frequency;
+        this.minFrequency = this.adaptive ? minFrequencySeconds : 0;
+        this.interval = this.frequency;
+    }
+
     public boolean getState() {
         return this.state;
     }
@@ -106,8 +209,51 @@ public class ServerInfo implements Serializable {
         return this.UUID;
     }
 
+    // Smoothed ping round-trip in ms, -1 until the server answered once
+    public long getLatency(){
+        return (serverPinger == null) ? -1 : serverPinger.getLatency().getLatency();
+    }
+
+    // Share of the online players the roster estimate knows of, 1 until the first ping
+    public double getRosterCompleteness() {
+        RosterEstimator roster = this.roster;
+        return (roster == null) ? 1 : roster.getCompleteness();
+    }
+
+    // Estimated full roster, from every sample so far; null until the first ping
+    public PlayerSet getRoster() {
+        return this.thisRoster;
+    }
+
+    // players.max of the last response, 0 until the server answered once
+    public int getMaxPlayers() {
+        StatusResponse response = this.lastResponse;
+        return (response == null || response.getPlayers() == null) ? 0 : response.getPlayers().getMax();
+    }
+
+    // Failure tracking, an open breaker holds this server's pings back
+    public CircuitBreaker getBreaker(){
+        return this.breaker;
+    }
+
+    // Time of the last successful ping, changed or not
+    public long getLastPingTime(){
+        return this.lastPingTime;
+    }
+
     /* Private Methods */
 
+    // Configs saved while the frequency was in minutes are moved to seconds; the pinger and breaker aren't saved.
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if(!isFrequencyInSeconds) {
+            this.isFrequencyInSeconds = true;
+            this.setFrequency((int) Math.min((long) frequency * 60, Integer.MAX_VALUE));
+        }
+        this.serverPinger = new ServerPing(InetSocketAddress.createUnresolved(host, Constants.MC_PORT));
+        this.breaker = new CircuitBreaker();
+    }
+
     /*private class RefreshTask extends TimerTask {
         @Override
         public void run() {
@@ -205,104 +351,155 @@ public class ServerInfo implements Serializable {
         }
     }*/
 
-    public void doUpdateTask(){
+    /**
+     * Pings the server without blocking, then diffs the new response against the last one on the given executor,
+     * and folds its sample into the roster estimate, which feeds the herald's player index; what changed is published
+     * on the herald's presence bus, which the tray and the webhooks are told from (see {@link MCHerald.alert.PresenceNotifier})
+     * @param executor Runs the diff step once the ping completed
+     * @return Future completed once the whole update (failed ping included) is done
+     */
+    public CompletableFuture<Void> doUpdateTask(Executor executor){
         System.out.println(ServerInfo.this.name+" Running refresh task.");
         StatusResponse lastResponse = ServerInfo.this.lastResponse;
-        refresh();
-        StatusResponse thisResponse = ServerInfo.this.lastResponse;
-
-        if(state && herald.getNotifying()) {
-            // if last query failed, update, no notify
-            if(lastResponse == null) {
-                System.out.println(ServerInfo.this.name+" last query failed, update, no notify");
-                //herald.updateServerTable();
-                return;
-            }
-
-            // if this query failed, do nothing
-            if(thisResponse == null) {
-                System.out.println(ServerInfo.this.name+" this query failed, do nothing");
-                return;
-            }
-
-            List<StatusResponse.Player> lastPlayers = lastResponse.getPlayers().getSample();
-            List<StatusResponse.Player> thisPlayers = thisResponse.getPlayers().getSample();
-
-            // if no players on last query, empty list, continue
-            if(lastPlayers == null){
-                System.out.println(ServerInfo.this.name+" no players on last query, empty list, continue");
-                //herald.updateServerTable();
-                lastPlayers = new ArrayList<>();
-                //return;
-            }
+        return refreshAsync()
+                .handle((response, e) -> response)
+                .thenAcceptAsync(response -> {
+                    StatusResponse thisResponse = (response == null) ? ServerInfo.this.lastResponse : response;
+                    if(response != null) updateRoster(response);
+                    if(response != null) detectAnomalies(response);
+                    publishEvents(lastResponse, response);
+                    evaluateRules(lastResponse, response);
+                    adaptInterval(lastResponse, thisResponse);
+                }, executor);
+    }
 
-            // if no players on this query, do nothing
-            if(thisPlayers == null) {
-                System.out.println(ServerInfo.this.name+" no players on this query, update");
-                //herald.updateServerTable();
-                return;
-            }
+    // Adaptive mode: any player activity drops the interval to the minimum, a quiet ping doubles it up to the frequency.
+    private void adaptInterval(StatusResponse lastResponse, StatusResponse thisResponse){
+        if(!adaptive || lastResponse == null || thisResponse == null) return; // failures are left to the back-off
+        if(thisResponse != lastResponse && hasActivity(lastResponse.getPlayers(), thisResponse.getPlayers()))
+            this.interval = minFrequency;
+        else
+            this.interval = (int) Math.min((long) getInterval() * 2, frequency);
+    }
 
-            // Get player names
-            StringBuilder messageText = new StringBuilder();
+    // The sample is a random subset on busy servers, so only compare it when it holds every online player.
+    private static boolean hasActivity(StatusResponse.Players last, StatusResponse.Players now){
+        if(last == null || now == null) return last != now;
+        if(last.getOnline() != now.getOnline()) return true;
+        PlayerSet lastSample = last.getSampleSet(), thisSample = now.getSampleSet();
+        if(lastSample == null) lastSample = PlayerSet.EMPTY;
+        if(thisSample == null) thisSample = PlayerSet.EMPTY;
+        if(thisSample.size() < now.getOnline() || lastSample.size() < last.getOnline()) return false;
+        return !lastSample.hasSamePlayers(thisSample);
+    }
 
-            HashMap<String, Boolean> counter = new HashMap<>();
-            thisPlayers.forEach(player -> counter.put(player.getName(), true));
+    // Every successful ping counts, even an unchanged one: a player missing from yet another sample is less likely still there.
+    private void updateRoster(StatusResponse response){
+        if(response.getPlayers() == null) return;
+        if(roster == null) roster = new RosterEstimator();
+        isRosterConverged = roster.getCompleteness() >= RosterEstimator.CONVERGED;
+        lastRoster = thisRoster;
+        thisRoster = roster.update(response.getPlayers().getSampleSet(), response.getPlayers().getOnline(), System.currentTimeMillis());
+        herald.getPresenceIndex().update(getUUID(), thisRoster);
+    }
 
-            for (StatusResponse.Player thisPlayer : lastPlayers) {
-                if (counter.containsKey(thisPlayer.getName())) counter.put(thisPlayer.getName(), false);
-                else counter.put(thisPlayer.getName(), true);
-            }
+    // Publishes what changed since the last ping on the herald's presence bus; response is null if the ping failed.
+    private void publishEvents(StatusResponse lastResponse, StatusResponse response){
+        PresenceBus bus = herald.getPresenceBus();
+        int lastOnline = onlineOf(lastResponse);
+        if(response == null) {
+            if(isUp) bus.publish(PresenceEvent.down(getUUID(), lastOnline));
+            isUp = false;
+            return;
+        }
+        int online = onlineOf(response);
+        String version = versionOf(response);
+        if(!isUp) bus.publish(PresenceEvent.up(getUUID(), online, version));
+        isUp = true;
+        if(lastResponse != null && response != lastResponse) {
+            String lastVersion = versionOf(lastResponse);
+            if(version != null && !version.equals(lastVersion)) bus.publish(PresenceEvent.versionChanged(getUUID(), online, version));
+            if(online != lastOnline) bus.publish(PresenceEvent.countChanged(getUUID(), lastOnline, online));
+        }
 
-            ArrayList<String> thisPlayerNames = new ArrayList<>();
-            counter.forEach((playerName, flag) -> {
-                if(flag) thisPlayerNames.add(playerName);
-            });
+        // an unchanged payload may still expire players off the roster;
+        // the first roster has no one to compare with, and a newly sampled player is only a join once the roster converged
+        if(lastRoster == null || lastRoster == thisRoster) return;
+        if(presence == null) presence = new PresenceDiff();
+        presence.compute(lastRoster, thisRoster);
+        for(int n = 0; n < presence.getLeftCount(); n++)
+            bus.publish(PresenceEvent.left(getUUID(), lastRoster.getId(presence.getLeft(n)), online));
+        if(!isRosterConverged) return;
+        for(int n = 0; n < presence.getJoinedCount(); n++)
+            bus.publish(PresenceEvent.joined(getUUID(), thisRoster.getId(presence.getJoined(n)), online));
+    }
 
-            int thisCount = thisResponse.getPlayers().getOnline();
-            int lastCount = lastResponse.getPlayers().getOnline();
-            int thisPlayerCount = thisPlayerNames.size();
+    // Every successful ping is a sample of players.online, an unchanged one included; surges and drops are told as notifications.
+    private void detectAnomalies(StatusResponse response){
+        if(response.getPlayers() == null) return;
+        if(anomalies == null) anomalies = new CountAnomalyDetector();
+        int online = response.getPlayers().getOnline();
+        CountAnomalyDetector.Signal signal = anomalies.update(online, System.currentTimeMillis());
+        if(signal == CountAnomalyDetector.Signal.NONE || !state) return;
+
+        String format = (signal == CountAnomalyDetector.Signal.SURGE) ? Language.ANOMALY.SURGE_FORMAT
+                : (signal == CountAnomalyDetector.Signal.DROP) ? Language.ANOMALY.DROP_FORMAT
+                : Language.ANOMALY.UNUSUAL_FORMAT;
+        System.out.println(ServerInfo.this.name+" "+signal+", z = "+anomalies.getZScore());
+        herald.sendNotification(new Notification(
+                "anomaly:" + getUUID(),
+                name,
+                String.format(format, online, Math.round(anomalies.getExpected())),
+                TrayIcon.MessageType.INFO,
+                0
+        ));
+    }
 
-            // if 0 players, do nothing
-            // if the count is the same, do nothing
-            if(lastCount - thisCount == 0 && thisPlayerCount == 0) {
-                System.out.println(ServerInfo.this.name+" 0 players AND the count is the same, do nothing");
-                return;
-            }
+    // Fires the herald's alert rules this update turned true, as notifications of the server (so summed up with the
+    // others of a busy batch, rather than shown one by one like alerts); response is null if the ping failed.
+    private void evaluateRules(StatusResponse lastResponse, StatusResponse response){
+        long now = System.currentTimeMillis();
+        long lastDowntime = this.downtime;
+        if(response == null) {
+            if(downSince == 0) downSince = now;
+            downtime = now - downSince;
+        } else {
+            downSince = downtime = 0;
+        }
+        AlertRules rules = herald.getAlertRules();
+        if(!state || rules.isEmpty()) return;
+
+        if(alertChange == null) alertChange = new AlertRules.Change();
+        AlertRules.Change change = alertChange.clear().downtime(lastDowntime, downtime);
+        if(response != null && lastResponse != null && response != lastResponse) {
+            change.online(onlineOf(lastResponse), onlineOf(response))
+                    .version(versionOf(lastResponse), versionOf(response))
+                    .motd(motdOf(lastResponse), motdOf(response));
+        }
+        if(response != null && isRosterConverged && lastRoster != null && lastRoster != thisRoster) {
+            if(presence == null) presence = new PresenceDiff();
+            if(presence.getBefore() != lastRoster || presence.getAfter() != thisRoster) presence.compute(lastRoster, thisRoster);
+            change.players(presence);
+        }
+        rules.evaluate(change, (rule, text) -> herald.sendNotification(new Notification(
+                "rule:" + getUUID(),
+                name,
+                text,
+                TrayIcon.MessageType.NONE,
+                (rule.getKind() == AlertRule.Kind.PLAYER_JOINS) ? 1 : 0
+        )));
+    }
 
-            // if 1 or 2 players, provide "<player_name[n]> [has/have] logged in!"
-            if(thisPlayerCount == 1 || thisPlayerCount == 2){
-                System.out.println(ServerInfo.this.name+" 1 or 2 players, provide \"<player_name[n]> [has/have] logged in!\"");
-                StringJoiner stringJoiner = new StringJoiner(", ");
-                for(int i = 0; i < 2 && i < thisPlayerNames.size(); i++){
-                    stringJoiner.add(thisPlayerNames.get(i));
-                }
+    private static int onlineOf(StatusResponse response){
+        return (response == null || response.getPlayers() == null) ? 0 : response.getPlayers().getOnline();
+    }
 
-                if(thisPlayerNames.size() == 1) {
-                    messageText.append(String.format(Language.SERVER.NOTIFICATION_SMALL_SINGULAR_FORMAT, stringJoiner.toString()));
-                } else {
-                    messageText.append(String.format(Language.SERVER.NOTIFICATION_SMALL_PLURAL_FORMAT, stringJoiner.toString()));
-                }
-            }
+    private static String versionOf(StatusResponse response){
+        return (response == null || response.getVersion() == null) ? null : response.getVersion().getName();
+    }
 
-            // if 3 or more players, provide "[c] / [t] players are online"
-            // if the count differs, provide "[c] / [t] players are online"
-            else if(thisPlayerCount > 2 || lastCount - thisCount != 0){
-                System.out.println(ServerInfo.this.name+" 3 or more players OR the count differs, provide \"[c] / [t] players are online\"");
-                StringBuilder prefix = new StringBuilder();
-                prefix.append(ServerInfo.this.lastResponse.getPlayers().getOnline());
-                prefix.append("/");
-                prefix.append(ServerInfo.this.lastResponse.getPlayers().getMax());
-                messageText.append(String.format(Language.SERVER.NOTIFICATION_LARGE_FORMAT, prefix));
-            }
-            System.out.println(ServerInfo.this.name+" Sending Notification.");
-            herald.sendNotification(new Notification(
-                    name,
-                    messageText.toString(),
-                    TrayIcon.MessageType.NONE
-            ));
-        }
-        //herald.updateServerTable();
+    private static String motdOf(StatusResponse response){
+        return (response == null || response.getDescription() == null) ? null : response.getDescription().getText();
     }
 
     /* Contract Methods */
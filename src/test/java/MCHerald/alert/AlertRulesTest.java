@@ -0,0 +1,116 @@
+package MCHerald.alert;
+
+import MCHerald.player.PlayerRegistry;
+import MCHerald.player.PlayerSet;
+import MCHerald.player.PresenceDiff;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class AlertRulesTest {
+
+    private final AlertRules.Change change = new AlertRules.Change();
+
+    private static AlertRules rules(String... texts){
+        List<AlertRule> rules = new ArrayList<>();
+        for(String text : texts) rules.add(AlertRule.parse(text));
+        return new AlertRules(rules);
+    }
+
+    // Texts of the rules the change fires
+    private static List<String> fired(AlertRules rules, AlertRules.Change change){
+        List<String> fired = new ArrayList<>();
+        rules.evaluate(change, (rule, text) -> fired.add(rule.getText()));
+        return fired;
+    }
+
+    @Test
+    public void risingRulesFireAsTheCountPassesThemGoingUp(){
+        AlertRules rules = rules("online >= 10", "online > 20", "online >= 30");
+
+        assertEquals(Arrays.asList("online >= 10", "online > 20"), fired(rules, change.clear().online(5, 21)));
+        assertEquals(Arrays.asList(), fired(rules, change.clear().online(10, 20)));
+        assertEquals(Arrays.asList(), fired(rules, change.clear().online(21, 29)));  // already held
+        assertEquals(Arrays.asList(), fired(rules, change.clear().online(40, 5)));   // going down
+        assertEquals(Arrays.asList("online >= 30"), fired(rules, change.clear().online(29, 30)));
+    }
+
+    @Test
+    public void fallingRulesFireAsTheCountPassesThemGoingDown(){
+        AlertRules rules = rules("online <= 10", "online < 5");
+
+        assertEquals(Arrays.asList("online < 5", "online <= 10"), fired(rules, change.clear().online(20, 0)));
+        assertEquals(Arrays.asList("online <= 10"), fired(rules, change.clear().online(11, 10)));
+        assertEquals(Arrays.asList(), fired(rules, change.clear().online(10, 5)));   // already held
+        assertEquals(Arrays.asList("online < 5"), fired(rules, change.clear().online(5, 4)));
+        assertEquals(Arrays.asList(), fired(rules, change.clear().online(0, 20)));   // going up
+    }
+
+    @Test
+    public void equalRulesFireOnReachingTheCount(){
+        AlertRules rules = rules("online == 7", "online = 8");
+
+        assertEquals(Arrays.asList("online == 7"), fired(rules, change.clear().online(3, 7)));
+        assertEquals(Arrays.asList("online = 8"), fired(rules, change.clear().online(9, 8)));
+        assertEquals(Arrays.asList(), fired(rules, change.clear().online(7, 9)));
+    }
+
+    @Test
+    public void notEqualRulesFireOnLeavingTheCount(){
+        AlertRules rules = rules("online != 0");
+
+        assertEquals(Arrays.asList("online != 0"), fired(rules, change.clear().online(0, 3)));
+        assertEquals(Arrays.asList(), fired(rules, change.clear().online(3, 4)));
+        assertEquals(Arrays.asList(), fired(rules, change.clear().online(3, 0)));
+    }
+
+    @Test
+    public void downRulesFireOnceTheDowntimePassesThem(){
+        AlertRules rules = rules("down for > 5 min", "down 30s");
+
+        assertEquals(Arrays.asList(), fired(rules, change.clear().downtime(0, 20_000)));
+        assertEquals(Arrays.asList("down 30s"), fired(rules, change.clear().downtime(20_000, 200_000)));
+        assertEquals(Arrays.asList("down for > 5 min"), fired(rules, change.clear().downtime(200_000, 300_000)));
+        assertEquals(Arrays.asList(), fired(rules, change.clear().downtime(300_000, 400_000)));
+        assertEquals(Arrays.asList(), fired(rules, change.clear().downtime(400_000, 0))); // back up
+    }
+
+    @Test
+    public void versionAndMotdRulesFireOnTheirChange(){
+        AlertRules rules = rules("version changes", "motd matches (?i)maint");
+
+        assertEquals(Arrays.asList("version changes"), fired(rules, change.clear().version("1.19", "1.20")));
+        assertEquals(Arrays.asList(), fired(rules, change.clear().version(null, "1.20")));
+        assertEquals(Arrays.asList("motd matches (?i)maint"), fired(rules, change.clear().motd("Welcome", "Down for MAINTenance")));
+        assertEquals(Arrays.asList(), fired(rules, change.clear().motd("Down for MAINTenance", "maint again")));
+    }
+
+    @Test
+    public void playerRulesMatchANameOrAUuidHoweverWritten(){
+        String uuid = UUID.nameUUIDFromBytes("RulesNotch".getBytes()).toString();
+        int notch = PlayerRegistry.INSTANCE.intern(uuid, "RulesNotch");
+        int other = PlayerRegistry.INSTANCE.intern(UUID.nameUUIDFromBytes("RulesOther".getBytes()).toString(), "RulesOther");
+        PresenceDiff joined = new PresenceDiff();
+        joined.compute(PlayerSet.of(new int[]{other}, 1), PlayerSet.of(new int[]{notch, other}, 2));
+
+        assertEquals(Arrays.asList("player rulesnotch joins"), fired(rules("player rulesnotch joins"), change.clear().players(joined)));
+        String rule = "player " + uuid.toUpperCase().replace("-", "") + " joins";
+        assertEquals(Arrays.asList(rule), fired(rules(rule), change.clear().players(joined)));
+        assertEquals(Arrays.asList(), fired(rules("player RulesOther joins"), change.clear().players(joined)));
+    }
+
+    @Test
+    public void rejectsWhatIsNotARule(){
+        for(String text : new String[]{"online >= x", "motd matches (", "foo", "online > 99999999999"}){
+            try {
+                AlertRule.parse(text);
+                fail("Parsed " + text);
+            } catch (IllegalArgumentException expected) {}
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package MCHerald.alert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.function.DoubleBinaryOperator;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds the detector synthetic days, a sample every 5 minutes with seeded Gaussian noise of a Poisson count's spread,
+ * and checks the signals injected surges, drops and shifts raise, and that nothing else does.
+ */
+public class CountAnomalyDetectorTest {
+
+    private static final long DAY = 24 * CountAnomalyDetector.HOUR;
+    private static final long STEP = 5 * 60_000;
+    private static final long START = 1_700_000_000_000L - 1_700_000_000_000L % DAY; // a UTC midnight
+
+    private TimeZone timeZone;
+
+    @Before
+    public void setUp(){
+        timeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC")); // the detector learns the local hours
+    }
+
+    @After
+    public void tearDown(){
+        TimeZone.setDefault(timeZone);
+    }
+
+    // A daily curve peaking at 18:00, around base
+    private static double daily(double base, double hour){
+        return base * (1 + 0.6 * Math.sin((hour - 12) / 24 * 2 * Math.PI));
+    }
+
+    /**
+     * @param mean Mean count at (day, hour)
+     * @return "day hour:minute SIGNAL" of every signal raised
+     */
+    private static List<String> run(int days, DoubleBinaryOperator mean){
+        CountAnomalyDetector detector = new CountAnomalyDetector();
+        Random random = new Random(1);
+        List<String> signals = new ArrayList<>();
+        for(long t = 0; t < days * DAY; t += STEP){
+            int day = (int) (t / DAY);
+            double hour = (t % DAY) / (double) CountAnomalyDetector.HOUR;
+            double lambda = mean.applyAsDouble(day, hour);
+            int online = (int) Math.max(0, Math.round(lambda + Math.sqrt(lambda) * random.nextGaussian()));
+            CountAnomalyDetector.Signal signal = detector.update(online, START + t);
+            if(signal != CountAnomalyDetector.Signal.NONE)
+                signals.add(String.format("%d %02d:%02d %s", day, (int) hour, Math.round(hour % 1 * 60), signal));
+        }
+        return signals;
+    }
+
+    @Test
+    public void aNormalWeekRaisesNothing(){
+        assertEquals(Arrays.asList(), run(10, (day, hour) -> daily(200, hour)));
+    }
+
+    @Test
+    public void raisesASurge(){
+        List<String> signals = run(9, (day, hour) -> daily(200, hour) * (day == 8 && hour >= 18 && hour < 18.5 ? 2.5 : 1));
+        assertEquals(Arrays.asList("8 18:00 SURGE"), signals);
+    }
+
+    @Test
+    public void raisesADrop(){
+        List<String> signals = run(9, (day, hour) -> daily(200, hour) * (day == 8 && hour >= 20 && hour < 20.25 ? 0.2 : 1));
+        assertEquals(Arrays.asList("8 20:00 DROP"), signals);
+    }
+
+    @Test
+    public void aSlowRiseIsUnusualForTheTimeNotASurge(){
+        // 150 more players crept in over 3 hours of the night, and gone at once at 08:00
+        List<String> signals = run(9, (day, hour) -> daily(200, hour)
+                + (day == 8 && hour >= 2 && hour < 8 ? 150 * Math.min(1, (hour - 2) / 3) : 0));
+        assertEquals(2, signals.size());
+        assertTrue(signals.get(0), signals.get(0).matches("8 0[2-5]:\\d\\d UNUSUAL_FOR_TIME"));
+        assertEquals("8 08:00 DROP", signals.get(1));
+    }
+
+    @Test
+    public void aSmallServerRaisesNothing(){
+        for(double base : new double[]{0, 3, 8}){
+            assertEquals(Arrays.asList(), run(14, (day, hour) -> base)); // flat, but noisy
+            assertEquals(Arrays.asList(), run(14, (day, hour) -> daily(base, hour)));
+        }
+    }
+}
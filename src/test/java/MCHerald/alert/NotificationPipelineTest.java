@@ -0,0 +1,123 @@
+package MCHerald.alert;
+
+import MCHerald.util.Language;
+import MCHerald.util.Notification;
+import org.junit.After;
+import org.junit.Test;
+
+import java.awt.TrayIcon;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NotificationPipelineTest {
+
+    private final LinkedBlockingQueue<Notification> shown = new LinkedBlockingQueue<>();
+    private final NotificationPipeline pipeline = new NotificationPipeline(64, 0, shown::add);
+
+    @After
+    public void shutdown(){
+        pipeline.shutdown();
+    }
+
+    private static Notification server(String key, String text, int joined){
+        return new Notification(key, "Server " + key, text, TrayIcon.MessageType.NONE, joined);
+    }
+
+    private static Notification join(String key, String name){
+        Notification notification = server(key, name + " has logged in!", 1);
+        notification.names = name;
+        return notification;
+    }
+
+    private static Notification alert(String key){
+        return new Notification(key, "Watched", key + " is online", TrayIcon.MessageType.INFO, 1);
+    }
+
+    // Everything shown for the next batch, once the pipeline went quiet
+    private List<Notification> nextBatch() throws InterruptedException {
+        List<Notification> batch = new ArrayList<>();
+        Notification next = shown.poll(NotificationPipeline.WINDOW * 5, TimeUnit.MILLISECONDS);
+        while (next != null){
+            batch.add(next);
+            next = shown.poll(NotificationPipeline.WINDOW / 2, TimeUnit.MILLISECONDS);
+        }
+        return batch;
+    }
+
+    @Test
+    public void namesTwoJoinsOfAServer() throws InterruptedException {
+        pipeline.offer(server("s1", "12/20", 0)); // the count change ahead of the joins of the same ping
+        pipeline.offer(join("s1", "Steve"));
+        pipeline.offer(join("s1", "Alex"));
+
+        List<Notification> batch = nextBatch();
+        assertEquals(1, batch.size());
+        assertEquals(String.format(Language.SERVER.NOTIFICATION_SMALL_PLURAL_FORMAT, "Steve, Alex"), batch.get(0).text);
+        assertEquals(2, batch.get(0).joined);
+    }
+
+    @Test
+    public void countsMoreJoinsOfAServer() throws InterruptedException {
+        pipeline.offer(join("s1", "Steve"));
+        pipeline.offer(join("s1", "Alex"));
+        pipeline.offer(join("s1", "Herobrine"));
+        pipeline.offer(server("s2", "Steve has logged in!", 1)); // no names to go by
+        pipeline.offer(server("s2", "Alex has logged in!", 1));
+
+        List<Notification> batch = nextBatch();
+        assertEquals(2, batch.size());
+        assertEquals(String.format(Language.NOTIFICATION.JOINED_FORMAT, 3), batch.get(0).text);
+        assertEquals(3, batch.get(0).joined);
+        assertEquals(String.format(Language.NOTIFICATION.JOINED_FORMAT, 2), batch.get(1).text);
+    }
+
+    @Test
+    public void keepsTheTextOfASingleJoin() throws InterruptedException {
+        pipeline.offer(server("s1", "Steve has logged in!", 1));
+        pipeline.offer(server("s1", "Alex has logged in!", 0));
+
+        List<Notification> batch = nextBatch();
+        assertEquals(1, batch.size());
+        assertEquals("Alex has logged in!", batch.get(0).text);
+    }
+
+    @Test
+    public void sumsUpServersPastMaxShown() throws InterruptedException {
+        for(int i = 0; i <= NotificationPipeline.MAX_SHOWN; i++) pipeline.offer(server("s" + i, "x", 2));
+
+        List<Notification> batch = nextBatch();
+        assertEquals(1, batch.size());
+        assertEquals(String.format(Language.NOTIFICATION.SUMMARY_JOINED_FORMAT, NotificationPipeline.MAX_SHOWN + 1,
+                2 * (NotificationPipeline.MAX_SHOWN + 1)), batch.get(0).text);
+    }
+
+    @Test
+    public void capsTheAlertsOfABatch() throws InterruptedException {
+        int alerts = NotificationPipeline.MAX_ALERTS + 7;
+        for(int i = 0; i < alerts; i++) pipeline.offer(alert("player:" + i));
+        pipeline.offer(server("s1", "Steve has logged in!", 1));
+
+        List<Notification> batch = nextBatch();
+        assertEquals(NotificationPipeline.MAX_ALERTS + 2, batch.size());
+        for(int i = 0; i < NotificationPipeline.MAX_ALERTS; i++) assertEquals("player:" + i, batch.get(i).key);
+        assertEquals(String.format(Language.NOTIFICATION.SUMMARY_ALERTS_FORMAT, 7), batch.get(NotificationPipeline.MAX_ALERTS).text);
+        assertEquals("Steve has logged in!", batch.get(NotificationPipeline.MAX_ALERTS + 1).text);
+    }
+
+    @Test
+    public void dropsStaleEvents() throws InterruptedException {
+        Notification stale = server("s1", "Steve has logged in!", 1);
+        stale.createdAt -= NotificationPipeline.MAX_AGE + 1;
+        pipeline.offer(stale);
+        pipeline.offer(server("s2", "Alex has logged in!", 1));
+
+        List<Notification> batch = nextBatch();
+        assertEquals(1, batch.size());
+        assertEquals("s2", batch.get(0).key);
+        assertEquals(1, pipeline.getExpired());
+    }
+}
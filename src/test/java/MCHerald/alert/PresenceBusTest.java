@@ -0,0 +1,91 @@
+package MCHerald.alert;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PresenceBusTest {
+
+    private final PresenceBus bus = new PresenceBus(64);
+
+    @After
+    public void shutdown(){
+        bus.shutdown();
+    }
+
+    private static void awaitCaughtUp(PresenceBus.Subscription subscription) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (subscription.getLag() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertEquals(0, subscription.getLag());
+    }
+
+    @Test
+    public void roundsTheCapacityUp(){
+        assertEquals(64, bus.getCapacity());
+        assertEquals(128, new PresenceBus(65).getCapacity());
+    }
+
+    @Test
+    public void handsEveryEventInOrder() throws InterruptedException {
+        List<Long> seen = new CopyOnWriteArrayList<>();
+        PresenceBus.Subscription subscription = bus.subscribe("in order", event -> seen.add(event.getSequence()));
+        for(int i = 0; i < 50; i++) bus.publish(PresenceEvent.countChanged("s", i, i + 1));
+
+        awaitCaughtUp(subscription);
+        assertEquals(50, seen.size());
+        for(int i = 0; i < seen.size(); i++) assertEquals(i, (long) seen.get(i));
+        assertEquals(0, subscription.getMissed());
+    }
+
+    @Test
+    public void aLappedSubscriberSkipsAheadAndCountsWhatItMissed() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1), release = new CountDownLatch(1);
+        List<Long> seen = new CopyOnWriteArrayList<>();
+        PresenceBus.Subscription slow = bus.subscribe("slow", event -> {
+            seen.add(event.getSequence());
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignore) {}
+        });
+        List<Long> fast = new CopyOnWriteArrayList<>();
+        PresenceBus.Subscription quick = bus.subscribe("fast", event -> fast.add(event.getSequence()));
+
+        bus.publish(PresenceEvent.countChanged("s", 0, 1));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        int published = 1 + bus.getCapacity() * 3;
+        for(int i = 1; i < published; i++){
+            bus.publish(PresenceEvent.countChanged("s", i, i + 1));
+            if(i % 32 == 0) awaitCaughtUp(quick); // the fast one is never lapped
+        }
+        release.countDown();
+
+        awaitCaughtUp(slow);
+        awaitCaughtUp(quick);
+        assertEquals(published, bus.getPublished());
+        assertEquals(published, fast.size());
+        assertEquals(0, quick.getMissed());
+        assertTrue(slow.getMissed() > 0);
+        assertEquals(published, seen.size() + slow.getMissed());
+        for(int i = 1; i < seen.size(); i++) assertTrue(seen.get(i - 1) < seen.get(i));
+        assertEquals(published - 1, (long) seen.get(seen.size() - 1));
+    }
+
+    @Test
+    public void aCancelledSubscriberGetsNothingMore() throws InterruptedException {
+        List<Long> seen = new CopyOnWriteArrayList<>();
+        PresenceBus.Subscription subscription = bus.subscribe("cancelled", event -> seen.add(event.getSequence()));
+        bus.publish(PresenceEvent.up("s", 1, "1.20"));
+        awaitCaughtUp(subscription);
+        subscription.cancel();
+        bus.publish(PresenceEvent.down("s", 1));
+        Thread.sleep(100);
+        assertEquals(1, seen.size());
+    }
+}
@@ -0,0 +1,168 @@
+package MCHerald.alert;
+
+import MCHerald.util.Notification;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.TrayIcon;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class WebhookSinkTest {
+
+    private final LinkedBlockingQueue<String> received = new LinkedBlockingQueue<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean isHolding;  // whether a request waits for release before it's answered
+    private HttpServer server;
+    private Path spool;
+    private String url;
+
+    @Before
+    public void start() throws IOException {
+        spool = Files.createTempDirectory("webhook-spool");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/hook", exchange -> {
+            received.add(read(exchange.getRequestBody()));
+            try {
+                if(isHolding) release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException ignore) {}
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool()); // a held request mustn't hold the next one
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/hook";
+    }
+
+    @After
+    public void stop(){
+        release.countDown();
+        server.stop(0);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for(int n; (n = in.read(buffer)) != -1; ) out.write(buffer, 0, n);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private List<Path> spooled() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(spool, "*.json")) {
+            for(Path file : stream) files.add(file);
+        }
+        return files;
+    }
+
+    private static Notification notification(String text){
+        return new Notification("s1", "Server", text, TrayIcon.MessageType.NONE, 1);
+    }
+
+    private static String sha256(String text) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for(byte b : MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8))) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    private void awaitSpooled(int count) throws Exception {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (spooled().size() != count && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        assertEquals(count, spooled().size());
+    }
+
+    @Test
+    public void spoolsABatchUntilItsDelivered() throws Exception {
+        isHolding = true;
+        WebhookSink sink = new WebhookSink(spool, 1, 10);
+        sink.addEndpoint(url);
+        sink.offer(notification("Steve has logged in!"));
+
+        String body = received.poll(WebhookSink.WINDOW * 3, TimeUnit.MILLISECONDS);
+        assertNotNull(body);
+        assertTrue(body.contains("Steve has logged in!"));
+        List<Path> files = spooled(); // while the POST is still in flight
+        assertEquals(1, files.size());
+        assertTrue(files.get(0).getFileName().toString().startsWith(sha256(url) + "-"));
+
+        release.countDown();
+        awaitSpooled(0);
+        assertEquals(1, sink.getEndpoints().iterator().next().getDeliveredBatches());
+        sink.shutdown();
+    }
+
+    @Test
+    public void resendsABatchInFlightAtShutdown() throws Exception {
+        isHolding = true;
+        WebhookSink sink = new WebhookSink(spool, 1, 10);
+        sink.addEndpoint(url);
+        sink.offer(notification("Alex has logged in!"));
+        assertNotNull(received.poll(WebhookSink.WINDOW * 3, TimeUnit.MILLISECONDS));
+        sink.shutdown();
+        assertEquals(1, spooled().size());
+
+        isHolding = false;
+        WebhookSink next = new WebhookSink(spool, 1, 10);
+        next.addEndpoint(url);
+        String body = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(body);
+        assertTrue(body.contains("Alex has logged in!"));
+        awaitSpooled(0);
+        next.shutdown();
+    }
+
+    @Test
+    public void dropsTheOldestBatchesPastTheSpoolsCap() throws Exception {
+        WebhookSink sink = new WebhookSink(spool, 1, (WebhookSink.MAX_SPOOLED + 50) * WebhookSink.MAX_BATCH);
+        sink.addEndpoint(url);
+        sink.offer(notification("Steve has logged in!"));
+        assertNotNull(received.poll(WebhookSink.WINDOW * 3, TimeUnit.MILLISECONDS));
+        awaitSpooled(0); // idle again, so what follows waits out a window
+        int offered = (WebhookSink.MAX_SPOOLED + 50) * WebhookSink.MAX_BATCH;
+        for(int i = 0; i < offered; i++) sink.offer(notification("Player" + i + " has logged in!"));
+        sink.shutdown(); // within the window, so all of it is spooled
+
+        assertEquals(WebhookSink.MAX_SPOOLED, spooled().size());
+        WebhookSink.Endpoint endpoint = sink.getEndpoints().iterator().next();
+        assertEquals(50 * WebhookSink.MAX_BATCH, endpoint.getDropped());
+        for(Path file : spooled()) assertTrue(file.getFileName().toString().endsWith("-" + WebhookSink.MAX_BATCH + ".json"));
+    }
+
+    @Test
+    public void readsBackNoMoreThanTheSpoolsCap() throws Exception {
+        isHolding = true;
+        String prefix = sha256(url) + "-";
+        for(int i = 0; i < WebhookSink.MAX_SPOOLED + 5; i++){
+            String body = "{\"events\":[{\"text\":\"batch " + i + "\"},{\"text\":\"batch " + i + "\"}]}";
+            Files.write(spool.resolve(String.format("%s%013d-%06d-%d.json", prefix, 1_000 + i, i, 2)), body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        WebhookSink sink = new WebhookSink(spool, 1, 10);
+        sink.addEndpoint(url);
+        String body = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(body);
+        assertTrue(body.contains("batch 5\"")); // the 5 oldest were dropped unread
+        WebhookSink.Endpoint endpoint = sink.getEndpoints().iterator().next();
+        assertEquals(5 * 2, endpoint.getDropped());
+        assertEquals(WebhookSink.MAX_SPOOLED, endpoint.getSpooled());
+        assertEquals(WebhookSink.MAX_SPOOLED, spooled().size());
+        sink.shutdown();
+    }
+}
@@ -0,0 +1,84 @@
+package MCHerald.ping;
+
+import com.google.gson.JsonParseException;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong(-5_000_000_000L); // ns, a monotonic clock may well be negative
+    private final CircuitBreaker breaker = new CircuitBreaker(now::get);
+
+    private void advance(long millis){
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    public void opensPastTheThresholdAndProbesOnceTheBackOffRanOut(){
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure(new SocketTimeoutException());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState()); // one failure isn't enough
+        assertEquals(0, breaker.getRetryDelay());
+
+        breaker.recordFailure(new SocketTimeoutException());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(CircuitBreaker.BASE_BACKOFF, breaker.getRetryDelay());
+        assertFalse(breaker.allowRequest());
+
+        advance(CircuitBreaker.BASE_BACKOFF - 1);
+        assertEquals(1, breaker.getRetryDelay());
+        assertFalse(breaker.allowRequest());
+        advance(1);
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest()); // the probe is out
+
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getConsecutiveFailures());
+        assertNull(breaker.getLastFailure());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void aFailedProbeReopensWithTheBackOffDoubledUpToItsCap(){
+        breaker.recordFailure(new ConnectException());
+        breaker.recordFailure(new ConnectException());
+        long expected = CircuitBreaker.BASE_BACKOFF;
+        for(int i = 0; i < 12; i++){
+            assertEquals(expected, breaker.getRetryDelay());
+            advance(breaker.getRetryDelay());
+            assertTrue(breaker.allowRequest());
+            breaker.recordFailure(new ConnectException());
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+            expected = Math.min(expected * 2, CircuitBreaker.MAX_BACKOFF);
+        }
+        assertEquals(CircuitBreaker.MAX_BACKOFF, breaker.getRetryDelay());
+        assertEquals(CircuitBreaker.FailureType.REFUSED, breaker.getLastFailure());
+    }
+
+    @Test
+    public void classifiesTheFailures(){
+        assertEquals(CircuitBreaker.FailureType.DNS, CircuitBreaker.FailureType.classify(new UnknownHostException("x")));
+        assertEquals(CircuitBreaker.FailureType.REFUSED, CircuitBreaker.FailureType.classify(new ConnectException()));
+        assertEquals(CircuitBreaker.FailureType.TIMEOUT, CircuitBreaker.FailureType.classify(new SocketTimeoutException()));
+        assertEquals(CircuitBreaker.FailureType.PROTOCOL, CircuitBreaker.FailureType.classify(new EOFException()));
+        assertEquals(CircuitBreaker.FailureType.PROTOCOL, CircuitBreaker.FailureType.classify(new JsonParseException("x")));
+        assertEquals(CircuitBreaker.FailureType.PROTOCOL, CircuitBreaker.FailureType.classify(new IOException("VarInt too big")));
+        assertEquals(CircuitBreaker.FailureType.UNKNOWN, CircuitBreaker.FailureType.classify(new IOException("Broken pipe")));
+        // unwrapped from the futures it comes through
+        assertEquals(CircuitBreaker.FailureType.TIMEOUT, CircuitBreaker.FailureType.classify(
+                new ExecutionException(new CompletionException(new SocketTimeoutException()))));
+    }
+}
@@ -0,0 +1,63 @@
+package MCHerald.ping;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConnectGovernorTest {
+
+    private static long subnet(String ip) throws Exception {
+        return ConnectGovernor.subnetOf(new InetSocketAddress(InetAddress.getByName(ip), 25565));
+    }
+
+    @Test
+    public void spendsTheBurstThenRefillsAtTheRate(){
+        ConnectGovernor governor = new ConnectGovernor(10, 2, 100, 0);
+        assertEquals(0, governor.takeToken());
+        assertEquals(0, governor.takeToken());
+        long wait = governor.takeToken();
+        assertTrue("waits about a tenth of a second: " + wait, wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(2, governor.getConnects());
+        assertEquals(1, governor.getThrottled());
+    }
+
+    @Test
+    public void capsTheSessionsInFlight() throws Exception {
+        ConnectGovernor governor = new ConnectGovernor(1000, 1000, 2, 0);
+        assertTrue(governor.tryAdmit(subnet("10.0.0.1")));
+        assertTrue(governor.tryAdmit(subnet("10.0.1.1")));
+        assertTrue(governor.isSaturated());
+        assertFalse(governor.tryAdmit(subnet("10.0.2.1")));
+
+        governor.release(subnet("10.0.0.1"));
+        assertFalse(governor.isSaturated());
+        assertTrue(governor.tryAdmit(subnet("10.0.2.1")));
+        assertEquals(2, governor.getInFlight());
+    }
+
+    @Test
+    public void capsTheSessionsPerSubnet() throws Exception {
+        ConnectGovernor governor = new ConnectGovernor(1000, 1000, 100, 2);
+        assertTrue(governor.tryAdmit(subnet("10.0.0.1")));
+        assertTrue(governor.tryAdmit(subnet("10.0.0.2")));
+        assertFalse(governor.tryAdmit(subnet("10.0.0.3")));  // same /24
+        assertFalse(governor.isSaturated());                  // the rest of the line isn't held up
+        assertTrue(governor.tryAdmit(subnet("10.0.1.3")));
+
+        governor.release(subnet("10.0.0.1"));
+        assertTrue(governor.tryAdmit(subnet("10.0.0.3")));
+    }
+
+    @Test
+    public void groupsAddressesBySubnet() throws Exception {
+        assertEquals(subnet("192.168.1.1"), subnet("192.168.1.254"));
+        assertNotEquals(subnet("192.168.1.1"), subnet("192.168.2.1"));
+        assertEquals(subnet("2001:db8:1::1"), subnet("2001:db8:1:ffff::1"));
+        assertNotEquals(subnet("2001:db8:1::1"), subnet("2001:db8:2::1"));
+        assertEquals(-1, ConnectGovernor.subnetOf(InetSocketAddress.createUnresolved("example.com", 25565)));
+    }
+}
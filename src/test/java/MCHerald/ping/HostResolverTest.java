@@ -0,0 +1,234 @@
+package MCHerald.ping;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Resolves against a DNS stub on the loopback, which answers A, AAAA and SRV queries (or ANY, as JNDI asks
+ * for several types at once) from a table, and NXDOMAIN for a name it doesn't hold.
+ */
+public class HostResolverTest {
+
+    private static final int TYPE_A = 1, TYPE_AAAA = 28, TYPE_SRV = 33, TYPE_ANY = 255;
+
+    private final Map<String, List<byte[]>> records = new ConcurrentHashMap<>(); // "name type" -> rdata
+    private final Map<String, AtomicInteger> queries = new ConcurrentHashMap<>(); // name -> queries for it
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private DatagramSocket socket;
+    private HostResolver resolver;
+
+    @Before
+    public void setUp() throws IOException {
+        socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        Thread stub = new Thread(() -> {
+            byte[] buffer = new byte[512];
+            while (true){
+                try {
+                    DatagramPacket query = new DatagramPacket(buffer, buffer.length);
+                    socket.receive(query);
+                    byte[] answer = answer(Arrays.copyOf(query.getData(), query.getLength()));
+                    socket.send(new DatagramPacket(answer, answer.length, query.getSocketAddress()));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        stub.setDaemon(true);
+        stub.start();
+        resolver = new HostResolver("dns://127.0.0.1:" + socket.getLocalPort(), 25565, now::get);
+    }
+
+    @After
+    public void tearDown(){
+        resolver.shutdown();
+        socket.close();
+    }
+
+    @Test
+    public void followsTheSrvRecordToItsHostAndPort() throws Exception {
+        record("_minecraft._tcp.srv.test", TYPE_SRV, srv(0, 5, 25570, "play.srv.test"));
+        record("_minecraft._tcp.srv.test", TYPE_SRV, srv(10, 50, 25571, "backup.srv.test")); // lower priority
+        record("play.srv.test", TYPE_A, 10, 0, 0, 1);
+
+        HostResolver.Resolution resolution = resolve("srv.test");
+        assertEquals("play.srv.test", resolution.getHostName());
+        assertEquals(25570, resolution.getPort());
+        assertEquals(Collections.singletonList(new InetSocketAddress(InetAddress.getByAddress(new byte[]{10, 0, 0, 1}), 25570)),
+                resolution.getAddresses());
+    }
+
+    @Test
+    public void fallsBackToTheHostsAddressesWithoutAnSrvRecord() throws Exception {
+        byte[] v6 = new byte[16];
+        v6[0] = (byte) 0xfd;
+        v6[15] = 1;
+        record("plain.test", TYPE_A, 10, 0, 0, 2);
+        record("plain.test", TYPE_AAAA, v6);
+
+        HostResolver.Resolution resolution = resolve("plain.test");
+        assertEquals("plain.test", resolution.getHostName());
+        assertEquals(25565, resolution.getPort());
+        assertEquals(Arrays.asList(new InetSocketAddress(InetAddress.getByAddress(v6), 25565),
+                new InetSocketAddress(InetAddress.getByAddress(new byte[]{10, 0, 0, 2}), 25565)), resolution.getAddresses());
+    }
+
+    @Test
+    public void anExplicitPortSkipsTheSrvLookup() throws Exception {
+        record("_minecraft._tcp.port.test", TYPE_SRV, srv(0, 5, 25570, "elsewhere.test"));
+        record("port.test", TYPE_A, 10, 0, 0, 3);
+
+        HostResolver.Resolution resolution = resolve("port.test:25599");
+        assertEquals("port.test", resolution.getHostName());
+        assertEquals(25599, resolution.getPort());
+        assertNull(queries.get("_minecraft._tcp.port.test"));
+    }
+
+    @Test
+    public void servesTheCacheUntilTheTtlRunsOut() throws Exception {
+        record("ttl.test", TYPE_A, 10, 0, 0, 4);
+        HostResolver.Resolution first = resolve("ttl.test");
+        assertSame(first, resolve("TTL.test "));
+        now.addAndGet(HostResolver.TTL - 1);
+        assertSame(first, resolve("ttl.test"));
+        assertEquals(1, queries.get("ttl.test").get());
+
+        records.remove("ttl.test " + TYPE_A);
+        record("ttl.test", TYPE_A, 10, 0, 0, 5);
+        now.addAndGet(2);
+        assertSame(first, resolve("ttl.test")); // stale, served while it's refreshed
+        long deadline = System.currentTimeMillis() + 5_000;
+        HostResolver.Resolution refreshed = first;
+        while (refreshed == first && System.currentTimeMillis() < deadline){
+            Thread.sleep(10);
+            refreshed = resolve("ttl.test");
+        }
+        assertEquals(new InetSocketAddress(InetAddress.getByAddress(new byte[]{10, 0, 0, 5}), 25565), refreshed.getAddresses().get(0));
+        assertEquals(2, queries.get("ttl.test").get());
+    }
+
+    @Test
+    public void cachesAFailureForTheNegativeTtl() throws Exception {
+        assertUnknown("missing.test");
+        int asked = queries.get("missing.test").get();
+        now.addAndGet(HostResolver.NEGATIVE_TTL - 1);
+        assertUnknown("missing.test");
+        assertEquals(asked, queries.get("missing.test").get());
+
+        record("missing.test", TYPE_A, 10, 0, 0, 6);
+        now.addAndGet(2);
+        assertEquals(25565, resolve("missing.test").getPort());
+        assertTrue(queries.get("missing.test").get() > asked);
+    }
+
+    private HostResolver.Resolution resolve(String host) throws Exception {
+        return resolver.resolve(host).get(5, TimeUnit.SECONDS);
+    }
+
+    private void assertUnknown(String host) throws Exception {
+        try {
+            resolve(host);
+            fail("resolved " + host);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof UnknownHostException);
+        }
+    }
+
+    private void record(String name, int type, int... rdata){
+        byte[] bytes = new byte[rdata.length];
+        for(int i = 0; i < rdata.length; i++) bytes[i] = (byte) rdata[i];
+        record(name, type, bytes);
+    }
+
+    private void record(String name, int type, byte[] rdata){
+        records.computeIfAbsent(name + " " + type, k -> new CopyOnWriteArrayList<>()).add(rdata);
+    }
+
+    private static byte[] srv(int priority, int weight, int port, String target){
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(priority);
+            out.writeShort(weight);
+            out.writeShort(port);
+            writeName(out, target);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeName(DataOutputStream out, String name) throws IOException {
+        for(String label : name.split("\\.")){
+            out.writeByte(label.length());
+            out.writeBytes(label);
+        }
+        out.writeByte(0);
+    }
+
+    // The response to one query: its question echoed, then every record of the asked type(s), each pointing back at it.
+    private byte[] answer(byte[] query) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(query);
+        int id = in.getShort() & 0xFFFF;
+        in.position(12);
+        StringJoiner name = new StringJoiner(".");
+        for(int length; (length = in.get() & 0xFF) != 0; ){
+            byte[] label = new byte[length];
+            in.get(label);
+            name.add(new String(label, "US-ASCII"));
+        }
+        int type = in.getShort() & 0xFFFF;
+        in.getShort(); // class
+        int questionEnd = in.position();
+        String asked = name.toString().toLowerCase(Locale.ROOT);
+        queries.computeIfAbsent(asked, k -> new AtomicInteger()).incrementAndGet();
+
+        boolean isKnown = false;
+        List<int[]> types = new ArrayList<>();
+        List<byte[]> answers = new ArrayList<>();
+        for(int candidate : new int[]{TYPE_A, TYPE_AAAA, TYPE_SRV}){
+            List<byte[]> rdata = records.get(asked + " " + candidate);
+            if(rdata == null) continue;
+            isKnown = true;
+            if(type != candidate && type != TYPE_ANY) continue;
+            for(byte[] data : rdata){
+                types.add(new int[]{candidate});
+                answers.add(data);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(id);
+        out.writeShort(0x8180 | (isKnown ? 0 : 3)); // a response, recursion available; NXDOMAIN for an unknown name
+        out.writeShort(1);
+        out.writeShort(answers.size());
+        out.writeShort(0);
+        out.writeShort(0);
+        out.write(query, 12, questionEnd - 12);
+        for(int i = 0; i < answers.size(); i++){
+            out.writeShort(0xC00C); // the question's name
+            out.writeShort(types.get(i)[0]);
+            out.writeShort(1);
+            out.writeInt(60);
+            out.writeShort(answers.get(i).length);
+            out.write(answers.get(i));
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,64 @@
+package MCHerald.ping;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LatencyTrackerTest {
+
+    private final LatencyTracker tracker = new LatencyTracker();
+
+    private void record(long rttMillis, long exchangeMillis){
+        tracker.record(TimeUnit.MILLISECONDS.toNanos(rttMillis), TimeUnit.MILLISECONDS.toNanos(exchangeMillis));
+    }
+
+    @Test
+    public void smoothsTheRoundTrip(){
+        assertEquals(-1, tracker.getLatency());
+        record(10, 20);
+        assertEquals(10, tracker.getLatency()); // the first sample as is
+        record(18, 20);
+        assertEquals(11, tracker.getLatency()); // 10 + (18 - 10) / 8
+        for(int i = 0; i < 100; i++) record(50, 60);
+        assertEquals(50, tracker.getLatency());
+    }
+
+    @Test
+    public void keepsTheCeilingUntilThereAreEnoughSamples(){
+        for(int i = 0; i < 7; i++) record(5, 20);
+        assertEquals(10_000, tracker.getTimeout(0, 10_000));
+        record(5, 20);
+        assertEquals(96, tracker.getTimeout(0, 10_000)); // 20 ms sits in [16, 32), times 3
+    }
+
+    @Test
+    public void timesTheP99Out(){
+        for(int i = 0; i < 100; i++) record(5, 20);
+        record(5, 1_000);
+        assertEquals(96, tracker.getTimeout(0, 10_000)); // 1 slow exchange in 101 is past the p99
+
+        record(5, 1_000);
+        assertEquals(1024 * 3, tracker.getTimeout(0, 10_000)); // 2 in 102 aren't
+    }
+
+    @Test
+    public void clampsTheTimeoutToItsFloorAndCeiling(){
+        for(int i = 0; i < 10; i++) record(1, 2);
+        assertEquals(12, tracker.getTimeout(0, 10_000));
+        assertEquals(500, tracker.getTimeout(500, 10_000));
+
+        for(int i = 0; i < 10; i++) record(1, 5_000);
+        assertEquals(8192 * 3, tracker.getTimeout(0, 60_000));
+        assertEquals(10_000, tracker.getTimeout(500, 10_000));
+    }
+
+    @Test
+    public void aTimeoutPushesTheTimeoutBackUp(){
+        for(int i = 0; i < 8; i++) record(5, 20);
+        int timeout = tracker.getTimeout(0, 10_000);
+        tracker.recordTimeout(timeout);
+        assertEquals(128 * 3, tracker.getTimeout(0, 10_000)); // 96 ms sits in [64, 128)
+    }
+}
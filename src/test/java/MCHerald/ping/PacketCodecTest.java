@@ -0,0 +1,70 @@
+package MCHerald.ping;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import static org.junit.Assert.*;
+
+public class PacketCodecTest {
+
+    // "1.2.3.4" makes a 16 byte frame, the size of a pooled ping buffer
+    private static final InetSocketAddress HOST = InetSocketAddress.createUnresolved("1.2.3.4", 25565);
+
+    @Test
+    public void statusRequestIsAReadOnlyView(){
+        ByteBuffer frame = PacketCodec.statusRequest(HOST);
+        assertEquals(PacketCodec.PING_BUFFERS.getBufferSize(), frame.capacity());
+        assertTrue(frame.isReadOnly());
+        try {
+            PacketCodec.writePing(frame, 42);
+            fail("wrote into the cached frame");
+        } catch (ReadOnlyBufferException expected) {}
+    }
+
+    @Test
+    public void cachedFrameMatchesAFreshOne(){
+        ByteBuffer built = PacketCodec.buildStatusRequest(HOST, PacketCodec.PROTOCOL_VERSION);
+        ByteBuffer first = PacketCodec.statusRequest(HOST);
+        first.position(first.limit()); // as after a channel write
+        assertEquals(built, PacketCodec.statusRequest(HOST));
+    }
+
+    @Test
+    public void rejectsAFrameLongerThanTheProtocolAllows() throws IOException {
+        ByteBuffer in = ByteBuffer.allocate(8);
+        PacketCodec.writeVarInt(in, PacketCodec.MAX_PACKET_SIZE);
+        in.flip();
+        assertEquals(3 + PacketCodec.MAX_PACKET_SIZE, PacketCodec.peekFrameSize(in));
+        assertNull(PacketCodec.nextFrame(in));
+
+        for(int length : new int[]{PacketCodec.MAX_PACKET_SIZE + 1, Integer.MAX_VALUE, -5}){
+            in.clear();
+            PacketCodec.writeVarInt(in, length);
+            in.flip();
+            try {
+                PacketCodec.peekFrameSize(in);
+                fail("sized a frame of " + length);
+            } catch (IOException expected) {
+                assertEquals("Frame too large", expected.getMessage());
+            }
+            in.rewind();
+            try {
+                PacketCodec.nextFrame(in);
+                fail("waited for a frame of " + length);
+            } catch (IOException expected) {}
+        }
+    }
+
+    @Test
+    public void waitsForTheRestOfALengthPrefix() throws IOException {
+        ByteBuffer in = ByteBuffer.allocate(8);
+        in.put((byte) 0x80).flip(); // a continued VarInt, cut short
+        assertEquals(-1, PacketCodec.peekFrameSize(in));
+        assertNull(PacketCodec.nextFrame(in));
+        assertEquals(0, in.position());
+    }
+}
@@ -0,0 +1,70 @@
+package MCHerald.ping;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PingCoalescerTest {
+
+    private PingEngine engine;
+    private ServerSocket silent; // takes connects (into its backlog) and never answers
+
+    @Before
+    public void setUp() throws IOException {
+        engine = new PingEngine();
+        silent = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        engine.shutdown();
+        silent.close();
+    }
+
+    @Test
+    public void onlyTheFlightOwnerRecordsATimeout() throws Exception {
+        PingCoalescer coalescer = new PingCoalescer(engine);
+        List<InetSocketAddress> host = Collections.singletonList(new InetSocketAddress(InetAddress.getLoopbackAddress(), silent.getLocalPort()));
+        CountingTracker owner = new CountingTracker(), joiner = new CountingTracker();
+
+        CompletableFuture<StatusResponse> first = coalescer.ping(host, 300, null, owner, 0);
+        CompletableFuture<StatusResponse> second = coalescer.ping(host, 300, null, joiner, 0);
+        assertTimesOut(first);
+        assertTimesOut(second);
+        assertEquals(1, owner.timeouts.get());
+        assertEquals(0, joiner.timeouts.get());
+        assertEquals(0, coalescer.size()); // failures aren't kept
+    }
+
+    private static void assertTimesOut(CompletableFuture<StatusResponse> ping) throws Exception {
+        try {
+            ping.get(5, TimeUnit.SECONDS);
+            fail("a silent server answered");
+        } catch (ExecutionException e) {
+            assertEquals(CircuitBreaker.FailureType.TIMEOUT, CircuitBreaker.FailureType.classify(e));
+        }
+    }
+
+    private static class CountingTracker extends LatencyTracker {
+        final AtomicInteger timeouts = new AtomicInteger();
+
+        @Override
+        public synchronized void recordTimeout(int timeoutMillis){
+            timeouts.incrementAndGet();
+            super.recordTimeout(timeoutMillis);
+        }
+    }
+}
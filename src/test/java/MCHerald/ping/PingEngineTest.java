@@ -0,0 +1,218 @@
+package MCHerald.ping;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pings a fake server on the loopback, which answers either dialect or only the legacy one.
+ */
+public class PingEngineTest {
+
+    private static final String JSON = "{\"description\":\"Modern MOTD\",\"players\":{\"max\":20,\"online\":2},\"version\":{\"name\":\"1.16.5\",\"protocol\":754}}";
+
+    private PingEngine engine;
+    private ServerSocket server;
+    private volatile boolean isLegacyOnly;
+    private volatile String legacyMotd = "Legacy MOTD";
+    private volatile int announcedLength; // when set, the status response claims this length and never comes
+    private final AtomicInteger modernHandshakes = new AtomicInteger(), legacyPings = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        engine = new PingEngine();
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            while (true){
+                try {
+                    Socket socket = server.accept();
+                    new Thread(() -> answer(socket)).start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        engine.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void pingsAModernServer() throws Exception {
+        StatusResponse response = ping();
+        assertEquals("Modern MOTD", response.getDescription().getText());
+        assertEquals(2, response.getPlayers().getOnline());
+        assertEquals(1, modernHandshakes.get());
+        assertEquals(0, legacyPings.get());
+    }
+
+    @Test
+    public void fallsBackToTheLegacyPingAndRemembersIt() throws Exception {
+        isLegacyOnly = true;
+        StatusResponse response = ping();
+        assertEquals("Legacy MOTD", response.getDescription().getText());
+        assertEquals(5, response.getPlayers().getOnline());
+        assertEquals(1, modernHandshakes.get());
+        assertEquals(1, legacyPings.get());
+
+        ping(); // straight to the legacy ping this time
+        assertEquals(1, modernHandshakes.get());
+        assertEquals(2, legacyPings.get());
+    }
+
+    @Test
+    public void readsALegacyReplyLargerThanThePooledBuffer() throws Exception {
+        isLegacyOnly = true;
+        char[] motd = new char[20_000]; // 40 KB of UTF-16
+        Arrays.fill(motd, 'x');
+        legacyMotd = new String(motd);
+        assertEquals(legacyMotd, ping().getDescription().getText());
+    }
+
+    @Test
+    public void failsARefusedConnect() throws Exception {
+        int port;
+        try (ServerSocket closed = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = closed.getLocalPort();
+        }
+        try {
+            engine.ping(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 2000, null, null).get(5, TimeUnit.SECONDS);
+            fail("pinged a closed port");
+        } catch (ExecutionException e) {
+            assertEquals(CircuitBreaker.FailureType.REFUSED, CircuitBreaker.FailureType.classify(e));
+        }
+        assertNotNull(ping()); // the engine carries on
+    }
+
+    @Test
+    public void failsAFrameLongerThanTheProtocolAllows() throws Exception {
+        announcedLength = Integer.MAX_VALUE;
+        long start = System.nanoTime();
+        try {
+            ping();
+            fail("waited on a 2 GB frame");
+        } catch (ExecutionException e) {
+            assertEquals("Frame too large", e.getCause().getMessage());
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000)); // failed at once, not on the timeout
+
+        announcedLength = 0;
+        assertNotNull(ping()); // the engine carries on
+    }
+
+    @Test
+    public void racesPastADeadIpv6AddressToALiveIpv4One() throws Exception {
+        // 2001:db8::/32 is for documentation: never answers, or isn't even routed
+        InetSocketAddress dead = new InetSocketAddress(InetAddress.getByAddress("dual.test",
+                new byte[]{0x20, 0x01, 0x0d, (byte) 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1}), server.getLocalPort());
+        InetSocketAddress live = new InetSocketAddress(InetAddress.getByAddress("dual.test",
+                InetAddress.getLoopbackAddress().getAddress()), server.getLocalPort());
+        assertNull(engine.getFamily(dead));
+
+        long start = System.nanoTime();
+        StatusResponse response = engine.ping(Arrays.asList(dead, live), 5000, null, null).get(5, TimeUnit.SECONDS);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals("Modern MOTD", response.getDescription().getText());
+        assertTrue("took " + elapsed + " ms", elapsed < PingEngine.CONNECTION_ATTEMPT_DELAY + 1000); // not the 5 s timeout
+        assertEquals(Inet4Address.class, engine.getFamily(dead));
+    }
+
+    @Test
+    public void interleavesTheFamiliesThePreferredOneFirst() throws Exception {
+        InetSocketAddress v6a = address("::1"), v6b = address("::2"), v4a = address("10.0.0.1"), v4b = address("10.0.0.2"), v4c = address("10.0.0.3");
+        List<InetSocketAddress> addresses = Arrays.asList(v6a, v6b, v4a, v4b, v4c);
+
+        assertEquals(Arrays.asList(v6a, v4a, v6b, v4b, v4c), PingEngine.interleave(addresses, null));
+        assertEquals(Arrays.asList(v4a, v6a, v4b, v6b, v4c), PingEngine.interleave(addresses, Inet4Address.class));
+        assertEquals(Arrays.asList(v4a, v4b, v4c), PingEngine.interleave(Arrays.asList(v4a, v4b, v4c), Inet6Address.class));
+    }
+
+    private static InetSocketAddress address(String literal) throws UnknownHostException {
+        return new InetSocketAddress(InetAddress.getByName(literal), 25565);
+    }
+
+    private StatusResponse ping() throws Exception {
+        return engine.ping(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort()), 2000, null, null)
+                .get(5, TimeUnit.SECONDS);
+    }
+
+    // One exchange of the fake server; a legacy only server hangs up on the modern handshake.
+    private void answer(Socket socket){
+        try (Socket ignore = socket) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            int first = in.readUnsignedByte();
+            if(first == 0xFE) {
+                legacyPings.incrementAndGet();
+                in.readUnsignedByte();
+                String reply = "\u00A71\u0000127\u00001.6.4\u0000" + legacyMotd + "\u00005\u000010";
+                out.writeByte(0xFF);
+                out.writeShort(reply.length());
+                out.writeChars(reply);
+                out.flush();
+                return;
+            }
+            modernHandshakes.incrementAndGet();
+            if(isLegacyOnly) return;
+            int length = (first & 0x80) == 0 ? first : (first & 0x7F) | (readVarInt(in) << 7);
+            in.readFully(new byte[length]);     // handshake
+            in.readFully(new byte[readVarInt(in)]); // status request
+            if(announcedLength != 0){
+                writeVarInt(out, announcedLength);
+                out.writeByte(0);
+                out.flush();
+                while (in.read() != -1) ; // until the client hangs up
+                return;
+            }
+
+            byte[] json = JSON.getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream packet = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(packet);
+            writeVarInt(data, 0);
+            writeVarInt(data, json.length);
+            data.write(json);
+            writeVarInt(out, packet.size());
+            out.write(packet.toByteArray());
+            out.flush();
+
+            in.readFully(new byte[readVarInt(in)]); // ping
+            out.writeByte(9);
+            out.writeByte(1);
+            out.writeLong(System.currentTimeMillis());
+            out.flush();
+        } catch (IOException ignore) {}
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for(int i = 0; ; i++){
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << i * 7;
+            if((b & 0x80) == 0) return value;
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & 0xFFFFFF80) != 0){
+            out.writeByte(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+}
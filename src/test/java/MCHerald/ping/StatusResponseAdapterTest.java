@@ -0,0 +1,96 @@
+package MCHerald.ping;
+
+import MCHerald.util.FaviconCache;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class StatusResponseAdapterTest {
+
+    private static final String JSON = "{\"version\":{\"name\":\"1.16.5\",\"protocol\":754},"
+            + "\"players\":{\"max\":100,\"online\":2,\"sample\":[{\"name\":\"DecodeA\",\"id\":\"00000000-0000-0000-0000-00000000000a\"},"
+            + "{\"name\":\"DecodeB\",\"id\":\"00000000-0000-0000-0000-00000000000b\"}]},"
+            + "\"description\":{\"text\":\"Hello \",\"extra\":[{\"text\":\"world\"}]},\"modinfo\":{\"type\":\"FML\"}}";
+
+    private static ByteBuffer utf8(String text){
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void decodesTheFieldsWeShow() throws Exception {
+        StatusResponse response = StatusResponseAdapter.decode(utf8(JSON));
+        assertEquals("1.16.5", response.getVersion().getName());
+        assertEquals(754, response.getVersion().getProtocol());
+        assertEquals(100, response.getPlayers().getMax());
+        assertEquals(2, response.getPlayers().getOnline());
+        assertEquals(2, response.getPlayers().getSampleSet().size());
+        assertEquals("Hello world", response.getDescription().getText());
+        assertEquals(0, response.getFaviconHash());
+    }
+
+    @Test
+    public void skipsAMotdNestedPastTheDepthLimit() throws Exception {
+        StringBuilder json = new StringBuilder("{\"description\":{\"text\":\"Top\",\"extra\":");
+        for(int i = 0; i < 100_000; i++) json.append("[{\"extra\":");
+        json.append("\"deep\"");
+        for(int i = 0; i < 100_000; i++) json.append("}]");
+        json.append("},\"players\":{\"max\":1,\"online\":1}}");
+
+        StatusResponse response = StatusResponseAdapter.decode(utf8(json.toString()));
+        assertEquals("Top", response.getDescription().getText());
+        assertEquals(1, response.getPlayers().getOnline());
+    }
+
+    @Test
+    public void returnsThePreviousResponseForAnIdenticalPayload() throws Exception {
+        StatusResponse previous = StatusResponseAdapter.decode(utf8(JSON));
+        ByteBuffer json = utf8(JSON);
+        assertSame(previous, StatusResponseAdapter.decode(json, previous));
+        assertFalse(json.hasRemaining());
+        assertNotSame(previous, StatusResponseAdapter.decode(utf8(JSON.replace("\"online\":2", "\"online\":3")), previous));
+    }
+
+    @Test
+    public void hashesTheFaviconWithoutDecodingIt() throws Exception {
+        String favicon = "data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mNk+M9QDwADhgGAWjR9awAAAABJRU5ErkJggg==";
+        String json = "{\"players\":{\"max\":1,\"online\":0},\"description\":\"\\\"favicon\\\": \\\"x\",\"favicon\": \"" + favicon + "\"}";
+        StatusResponse response = StatusResponseAdapter.decode(utf8(json));
+        assertEquals(FaviconCache.hash(favicon), response.getFaviconHash());
+        assertTrue(FaviconCache.INSTANCE.contains(response.getFaviconHash()));
+        assertEquals(response.getFaviconHash(), StatusResponseAdapter.decode(utf8(json)).getFaviconHash()); // skipped this time
+    }
+
+    @Test
+    public void readsAgainAFaviconNoLongerCached() throws Exception {
+        String json = "{\"favicon\":\"data:image/png;base64,bm90IGFuIGltYWdl\"}"; // never makes it into the cache
+        StatusResponse previous = StatusResponseAdapter.decode(utf8(json));
+        for(int i = 0; i < 100 && FaviconCache.INSTANCE.contains(previous.getFaviconHash()); i++) Thread.sleep(20);
+        assertFalse(FaviconCache.INSTANCE.contains(previous.getFaviconHash()));
+
+        StatusResponse response = StatusResponseAdapter.decode(utf8(json), previous);
+        assertNotSame(previous, response);
+        assertEquals(previous.getFaviconHash(), response.getFaviconHash());
+    }
+
+    @Test
+    public void decodesBothLegacyFormats() throws Exception {
+        StatusResponse modern = StatusResponseAdapter.decodeLegacy(utf16("\u00A71\u000078\u00001.6.4\u0000Old MOTD\u00005\u000020"), null);
+        assertEquals(78, modern.getVersion().getProtocol());
+        assertEquals("Old MOTD", modern.getDescription().getText());
+        assertEquals(5, modern.getPlayers().getOnline());
+        assertEquals(20, modern.getPlayers().getMax());
+
+        StatusResponse old = StatusResponseAdapter.decodeLegacy(utf16("Older MOTD\u00A73\u00A710"), null);
+        assertEquals(-1, old.getVersion().getProtocol());
+        assertEquals("Older MOTD", old.getDescription().getText());
+        assertEquals(3, old.getPlayers().getOnline());
+        assertEquals(10, old.getPlayers().getMax());
+    }
+
+    private static ByteBuffer utf16(String message){
+        return ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_16BE));
+    }
+}
@@ -0,0 +1,67 @@
+package MCHerald.ping;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TimingWheelTest {
+
+    @Test
+    public void expiresEveryKeyOnItsTickAcrossTheLevels(){
+        TimingWheel<Long> wheel = new TimingWheel<>();
+        long[] delays = {1, 2, 63, 64, 65, 127, 4095, 4096, 4097, 262143, 262144, 262145, 300000};
+        for(long delay : delays) wheel.schedule("key" + delay, delay, delay);
+
+        Random random = new Random(6);
+        TreeSet<Long> left = new TreeSet<>();
+        for(long delay : delays) left.add(delay);
+        long tick = 0;
+        while (!left.isEmpty()){
+            long next = tick + 1 + random.nextInt(5000);
+            for(long expired : wheel.advanceTo(next)){
+                assertTrue("expired late or twice: " + expired, expired > tick && expired <= next);
+                assertTrue(left.remove(expired));
+            }
+            // anything due by now has fired
+            assertTrue(left.isEmpty() || left.first() > next);
+            tick = next;
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void firesMissedTicksInOrder(){
+        TimingWheel<Long> wheel = new TimingWheel<>();
+        List<Long> expected = new ArrayList<>();
+        for(long delay = 4000; delay > 0; delay -= 37){
+            wheel.schedule("key" + delay, delay, delay);
+            expected.add(0, delay);
+        }
+        assertEquals(expected, wheel.advanceTo(5000)); // one late timer, every tick on the way
+    }
+
+    @Test
+    public void rescheduleAndCancelReplaceTheEarlierSchedule(){
+        TimingWheel<String> wheel = new TimingWheel<>();
+        wheel.schedule("a", "first", 10);
+        wheel.schedule("a", "second", 5000);
+        wheel.schedule("b", "b", 20);
+        assertTrue(wheel.cancel("b"));
+        assertFalse(wheel.cancel("b"));
+
+        assertEquals(Collections.emptyList(), wheel.advanceTo(4999));
+        assertEquals(Collections.singletonList("second"), wheel.advanceTo(5000));
+    }
+
+    @Test
+    public void clampsTheDelay(){
+        TimingWheel<String> wheel = new TimingWheel<>();
+        wheel.schedule("now", "now", 0);
+        wheel.schedule("far", "far", Long.MAX_VALUE);
+        assertEquals(Collections.singletonList("now"), wheel.advanceTo(1));
+        assertEquals(Collections.emptyList(), wheel.advanceTo(TimingWheel.MAX_DELAY - 1));
+        assertEquals(Collections.singletonList("far"), wheel.advanceTo(TimingWheel.MAX_DELAY));
+    }
+}
@@ -0,0 +1,113 @@
+package MCHerald.player;
+
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class PlayerRegistryTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    private static String uuid(String name){
+        return UUID.nameUUIDFromBytes(name.getBytes()).toString();
+    }
+
+    @Test
+    public void internsOncePerUuidDashedOrNot(){
+        PlayerRegistry registry = new PlayerRegistry(16, now::get);
+        int alice = registry.intern(uuid("Alice"), "Alice");
+
+        assertEquals(alice, registry.intern(uuid("Alice").replace("-", ""), "Alice"));
+        assertEquals(alice, registry.lookup("alice"));
+        assertEquals(UUID.fromString(uuid("Alice")), registry.getUuid(alice));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void keysFakeLinesByTheirText(){
+        PlayerRegistry registry = new PlayerRegistry(16, now::get);
+        int fake = registry.intern(null, "Join our discord!");
+
+        assertEquals(fake, registry.intern("not a uuid", "Join our discord!"));
+        assertEquals("Join our discord!", registry.getName(fake));
+        assertNull(registry.getUuid(fake));
+    }
+
+    @Test
+    public void followsRenames(){
+        PlayerRegistry registry = new PlayerRegistry(16, now::get);
+        int id = registry.intern(uuid("Alice"), "Alice");
+        registry.intern(uuid("Alice"), "Alicia");
+
+        assertEquals("Alicia", registry.getName(id));
+        assertEquals(id, registry.lookup("ALICIA"));
+        assertEquals(PlayerRegistry.NONE, registry.lookup("Alice"));
+    }
+
+    @Test
+    public void dropsPlayersUnseenForTheRetention(){
+        PlayerRegistry registry = new PlayerRegistry(16, now::get);
+        int gone = registry.intern(uuid("Gone"), "Gone");
+        int kept = registry.intern(uuid("Kept"), "Kept");
+        now.addAndGet(PlayerRegistry.RETENTION / 2);
+        registry.intern(uuid("Kept"), "Kept");
+        now.addAndGet(PlayerRegistry.RETENTION / 2 + 60_000);
+        registry.sweep(now.get());
+
+        assertEquals(1, registry.size());
+        assertNull(registry.getName(gone));
+        assertNull(registry.getUuid(gone));
+        assertEquals(PlayerRegistry.NONE, registry.lookup(uuid("Gone")));
+        assertEquals(PlayerRegistry.NONE, registry.lookup("Gone"));
+        assertEquals("Kept", registry.getName(kept));
+        assertEquals(kept, registry.lookup(uuid("Kept")));
+    }
+
+    @Test
+    public void aReusedIndexDoesNotResolveTheOldId(){
+        PlayerRegistry registry = new PlayerRegistry(16, now::get);
+        int gone = registry.intern(uuid("Gone"), "Gone");
+        now.addAndGet(PlayerRegistry.RETENTION + 60_000);
+        registry.sweep(now.get());
+        int next = registry.intern(uuid("Next"), "Next");
+
+        assertNotEquals(gone, next);
+        assertNull(registry.getName(gone));
+        assertEquals("Next", registry.getName(next));
+        assertNotEquals(gone, registry.intern(uuid("Gone"), "Gone")); // back, under a new id
+    }
+
+    @Test
+    public void aFullRegistryReclaimsBeforeGivingUp(){
+        PlayerRegistry registry = new PlayerRegistry(4, now::get);
+        for(int i = 0; i < 4; i++) assertNotEquals(PlayerRegistry.NONE, registry.intern(uuid("P" + i), "P" + i));
+
+        assertEquals(PlayerRegistry.NONE, registry.intern(uuid("P4"), "P4")); // nobody stale yet
+        assertNotEquals(PlayerRegistry.NONE, registry.intern(uuid("P0"), "P0"));
+
+        now.addAndGet(PlayerRegistry.RETENTION + 60_000);
+        registry.intern(uuid("P0"), "P0");
+        int p4 = registry.intern(uuid("P4"), "P4"); // full, so swept right away
+        assertNotEquals(PlayerRegistry.NONE, p4);
+        assertEquals(2, registry.size());
+        assertEquals("P0", registry.getName(registry.lookup(uuid("P0"))));
+    }
+
+    @Test
+    public void keysUuidsHoweverTheyAreWritten(){
+        String uuid = uuid("Alice");
+        assertEquals(uuid, PlayerRegistry.toKey(uuid.toUpperCase()));
+        assertEquals(uuid, PlayerRegistry.toKey(" " + uuid.replace("-", "") + " "));
+        assertEquals("alice", PlayerRegistry.toKey("Alice"));
+    }
+
+    @Test
+    public void growsPastItsInitialTables(){
+        PlayerRegistry registry = new PlayerRegistry(1 << 16, now::get);
+        for(int i = 0; i < 10_000; i++) assertEquals(i, registry.intern(uuid("G" + i), "G" + i));
+        for(int i = 0; i < 10_000; i++) assertEquals(i, registry.lookup(uuid("G" + i)));
+    }
+}
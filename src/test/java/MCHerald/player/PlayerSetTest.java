@@ -0,0 +1,53 @@
+package MCHerald.player;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class PlayerSetTest {
+
+    private static int player(String name){
+        return PlayerRegistry.INSTANCE.intern(UUID.nameUUIDFromBytes(name.getBytes()).toString(), name);
+    }
+
+    @Test
+    public void sortsAndDropsDuplicatesAndNone(){
+        int a = player("SetAlice"), b = player("SetBob"), c = player("SetCarol");
+        PlayerSet set = PlayerSet.of(new int[]{c, a, PlayerRegistry.NONE, b, a}, 5);
+
+        assertEquals(3, set.size());
+        for(int i = 1; i < set.size(); i++) assertTrue(set.getId(i - 1) < set.getId(i));
+        assertTrue(set.contains(a) && set.contains(b) && set.contains(c));
+        assertFalse(set.contains(PlayerRegistry.NONE));
+    }
+
+    @Test
+    public void onlyCountsTheGivenPrefix(){
+        int a = player("SetAlice"), b = player("SetBob");
+        PlayerSet set = PlayerSet.of(new int[]{a, b}, 1);
+        assertEquals(1, set.size());
+        assertFalse(set.contains(b));
+    }
+
+    @Test
+    public void emptyInputsGiveTheEmptySet(){
+        assertSame(PlayerSet.EMPTY, PlayerSet.of(new int[0], 0));
+        assertSame(PlayerSet.EMPTY, PlayerSet.of(new int[]{PlayerRegistry.NONE}, 1));
+    }
+
+    @Test
+    public void comparesByPlayersNotOrder(){
+        int a = player("SetAlice"), b = player("SetBob");
+        PlayerSet first = PlayerSet.of(new int[]{a, b}, 2), second = PlayerSet.of(new int[]{b, a}, 2);
+        assertTrue(first.hasSamePlayers(second));
+        assertFalse(first.hasSamePlayers(PlayerSet.of(new int[]{a}, 1)));
+    }
+
+    @Test
+    public void resolvesNamesThroughTheRegistry(){
+        int a = player("SetAlice");
+        assertEquals("SetAlice", PlayerSet.of(new int[]{a}, 1).getName(0));
+    }
+}
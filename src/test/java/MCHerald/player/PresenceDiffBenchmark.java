@@ -0,0 +1,52 @@
+package MCHerald.player;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diff of two samples of the given size, about a tenth of the players swapped between them.
+ * Run with the test classpath: java -cp target/test-classes:target/classes:&lt;deps&gt; MCHerald.player.PresenceDiffBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PresenceDiffBenchmark {
+
+    @Param({"12", "100", "1000"})
+    int players;
+
+    private PlayerSet before, after;
+    private final PresenceDiff diff = new PresenceDiff();
+
+    @Setup
+    public void setUp(){
+        Random random = new Random(players);
+        int swapped = Math.max(1, players / 10);
+        int[] ids = new int[players + swapped];
+        for(int i = 0; i < ids.length; i++)
+            ids[i] = PlayerRegistry.INSTANCE.intern(new UUID(random.nextLong(), random.nextLong()).toString(), "Bench" + i);
+        int[] first = new int[players], second = new int[players];
+        System.arraycopy(ids, 0, first, 0, players);
+        System.arraycopy(ids, swapped, second, 0, players);
+        before = PlayerSet.of(first, players);
+        after = PlayerSet.of(second, players);
+    }
+
+    @Benchmark
+    public int diff(){
+        return diff.compute(before, after).getJoinedCount();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PresenceDiffBenchmark.class.getSimpleName()).build()).run();
+    }
+}
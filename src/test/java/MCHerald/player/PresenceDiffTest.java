@@ -0,0 +1,73 @@
+package MCHerald.player;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class PresenceDiffTest {
+
+    private static PlayerSet set(int[] pool, Set<Integer> members){
+        int[] ids = new int[members.size()];
+        int count = 0;
+        for(int member : members) ids[count++] = pool[member];
+        return PlayerSet.of(ids, count);
+    }
+
+    @Test
+    public void matchesASetDifference(){
+        Random random = new Random(1);
+        int[] pool = new int[64];
+        for(int i = 0; i < pool.length; i++) pool[i] = PlayerRegistry.INSTANCE.intern(new UUID(random.nextLong(), random.nextLong()).toString(), "Diff" + i);
+
+        PresenceDiff diff = new PresenceDiff(); // reused, as a server does
+        for(int round = 0; round < 2000; round++){
+            Set<Integer> before = new HashSet<>(), after = new HashSet<>();
+            int size = 1 + random.nextInt(pool.length);
+            for(int i = 0; i < size; i++){
+                if(random.nextBoolean()) before.add(i);
+                if(random.nextBoolean()) after.add(i);
+            }
+            diff.compute(set(pool, before), set(pool, after));
+
+            Set<String> joined = new HashSet<>(), left = new HashSet<>(), expectedJoined = new HashSet<>(), expectedLeft = new HashSet<>();
+            for(int n = 0; n < diff.getJoinedCount(); n++) joined.add(diff.getJoinedName(n));
+            for(int n = 0; n < diff.getLeftCount(); n++) left.add(diff.getLeftName(n));
+            for(int i : after) if(!before.contains(i)) expectedJoined.add("Diff" + i);
+            for(int i : before) if(!after.contains(i)) expectedLeft.add("Diff" + i);
+
+            assertEquals(expectedJoined, joined);
+            assertEquals(expectedLeft, left);
+            assertEquals(expectedJoined.size(), diff.getJoinedCount());
+            assertEquals(expectedLeft.size(), diff.getLeftCount());
+            assertEquals(expectedJoined.isEmpty() && expectedLeft.isEmpty(), diff.isEmpty());
+        }
+    }
+
+    @Test
+    public void treatsNullAsEmpty(){
+        int a = PlayerRegistry.INSTANCE.intern(UUID.randomUUID().toString(), "DiffNull");
+        PlayerSet set = PlayerSet.of(new int[]{a}, 1);
+
+        PresenceDiff diff = new PresenceDiff().compute(null, set);
+        assertEquals(1, diff.getJoinedCount());
+        assertEquals(0, diff.getLeftCount());
+        assertEquals("DiffNull", diff.getJoinedName(0));
+
+        diff.compute(set, null);
+        assertEquals(0, diff.getJoinedCount());
+        assertEquals(1, diff.getLeftCount());
+        assertSame(PlayerSet.EMPTY, diff.getAfter());
+    }
+
+    @Test
+    public void sameSetIsEmpty(){
+        int a = PlayerRegistry.INSTANCE.intern(UUID.randomUUID().toString(), "DiffSame");
+        PlayerSet set = PlayerSet.of(new int[]{a}, 1);
+        assertTrue(new PresenceDiff().compute(set, set).isEmpty());
+    }
+}
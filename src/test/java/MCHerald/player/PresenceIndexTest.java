@@ -0,0 +1,123 @@
+package MCHerald.player;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class PresenceIndexTest {
+
+    private final PresenceIndex index = new PresenceIndex();
+    private final List<String> onlines = new CopyOnWriteArrayList<>(); // "player@server" the listener was told
+
+    {
+        index.setListener((player, server) -> onlines.add(player + "@" + server));
+    }
+
+    private static PlayerSet players(int... ids){
+        return PlayerSet.of(ids.clone(), ids.length);
+    }
+
+    private static Set<String> servers(String... servers){
+        return new HashSet<>(Arrays.asList(servers));
+    }
+
+    @Test
+    public void tracksThePlayersOfEachServer(){
+        index.update("A", players(1, 2, 3));
+        index.update("B", players(3, 4));
+        assertEquals(servers("A"), index.getServers(1));
+        assertEquals(servers("A", "B"), index.getServers(3));
+        assertEquals(servers("B"), index.getServers(4));
+        assertFalse(index.isOnline(5));
+        assertEquals(Collections.emptySet(), index.getServers(5));
+
+        index.update("A", players(2));
+        assertFalse(index.isOnline(1));
+        assertEquals(servers("B"), index.getServers(3));
+        index.update("A", null);
+        assertFalse(index.isOnline(2));
+    }
+
+    @Test
+    public void removingAServerDropsItsPlayers(){
+        index.update("A", players(1, 2));
+        index.update("B", players(2));
+        index.remove("A");
+        assertFalse(index.isOnline(1));
+        assertEquals(servers("B"), index.getServers(2));
+        index.remove("A"); // already gone
+        index.remove("C"); // never known
+        assertEquals(servers("B"), index.getServers(2));
+    }
+
+    @Test
+    public void followsAPlayerMovingBetweenServers(){
+        index.update("A", players(7));
+        index.update("B", players(7)); // on both for a ping, as samples lag
+        index.update("A", players());
+        assertEquals(servers("B"), index.getServers(7));
+        assertEquals(Arrays.asList("7@A"), onlines); // never offline in between
+    }
+
+    @Test
+    public void tellsTheListenerOnceAPlayerComesOnline(){
+        index.update("A", players(1, 2));
+        index.update("A", players(1, 2)); // the same sample again
+        index.update("B", players(2));
+        assertEquals(servers("1@A", "2@A"), new HashSet<>(onlines));
+        assertEquals(2, onlines.size());
+
+        index.update("A", players());
+        index.update("B", players());
+        index.update("B", players(1));
+        assertEquals("1@B", onlines.get(onlines.size() - 1));
+        assertEquals(3, onlines.size());
+    }
+
+    @Test
+    public void looksAPlayerUpByName(){
+        int id = PlayerRegistry.INSTANCE.intern(UUID.nameUUIDFromBytes("IndexSteve".getBytes()).toString(), "IndexSteve");
+        index.update("A", players(id));
+        assertEquals(servers("A"), index.getServers("indexsteve"));
+        assertEquals(Collections.emptySet(), index.getServers("IndexNobody"));
+    }
+
+    @Test
+    public void takesTwoServersUpdatingAtOnce() throws InterruptedException {
+        // both servers swing their overlapping halves of 0..99 back and forth, and end on their first set
+        PlayerSet[] sets = new PlayerSet[4];
+        for(int s = 0; s < sets.length; s++){
+            int[] ids = new int[50];
+            for(int i = 0; i < ids.length; i++) ids[i] = 1 + (25 * s + i) % 100;
+            sets[s] = players(ids);
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for(int t = 0; t < 2; t++){
+            String server = (t == 0) ? "A" : "B";
+            PlayerSet first = sets[2 * t], second = sets[2 * t + 1];
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ignore) {}
+                for(int round = 0; round < 5_000; round++) index.update(server, (round % 2 == 0) ? second : first);
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for(Thread thread : threads) thread.join();
+
+        for(int id = 1; id <= 100; id++){
+            Set<String> expected = new HashSet<>();
+            if(sets[0].contains(id)) expected.add("A");
+            if(sets[2].contains(id)) expected.add("B");
+            assertEquals("player " + id, expected, index.getServers(id));
+            assertEquals(!expected.isEmpty(), index.isOnline(id));
+        }
+    }
+}
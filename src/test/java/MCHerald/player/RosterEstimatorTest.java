@@ -0,0 +1,83 @@
+package MCHerald.player;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RosterEstimatorTest {
+
+    private static final long INTERVAL = 60_000; // ms
+
+    private final RosterEstimator roster = new RosterEstimator();
+    private long now = 1_000_000;
+
+    // Players from..to (exclusive), wrapping past online, as ids 1..online
+    private static PlayerSet sample(int from, int to, int online){
+        int[] ids = new int[to - from];
+        for(int i = from; i < to; i++) ids[i - from] = 1 + i % online;
+        return PlayerSet.of(ids, ids.length);
+    }
+
+    private PlayerSet ping(PlayerSet sample, int online){
+        now += INTERVAL;
+        return roster.update(sample, online, now);
+    }
+
+    @Test
+    public void mergesPartialSamplesUntilComplete(){
+        assertEquals(12, ping(sample(0, 12, 20), 20).size());
+        assertEquals(0.6, roster.getCompleteness(), 1e-9);
+        assertTrue(roster.getCompleteness() < RosterEstimator.CONVERGED);
+
+        assertEquals(20, ping(sample(12, 24, 20), 20).size());
+        assertEquals(1, roster.getCompleteness(), 1e-9);
+        assertTrue(roster.getRoster().hasSamePlayers(sample(0, 20, 20)));
+    }
+
+    @Test
+    public void aCompleteSampleReplacesTheRoster(){
+        ping(sample(0, 3, 3), 3);
+        PlayerSet replaced = ping(PlayerSet.of(new int[]{2, 4}, 2), 2);
+        assertTrue(replaced.hasSamePlayers(PlayerSet.of(new int[]{2, 4}, 2)));
+        assertSame(replaced, ping(PlayerSet.of(new int[]{4, 2}, 2), 2)); // unchanged, same instance
+        assertEquals(1, roster.getCompleteness(), 1e-9);
+    }
+
+    @Test
+    public void expiresAPlayerOnceItMissedTheSamplesItTakes(){
+        int misses = RosterEstimator.missesToExpire(12, 20);
+        assertEquals(8, misses); // 0.4^8 < 0.001 < 0.4^7
+        ping(PlayerSet.of(new int[]{100}, 1), 20);
+        for(int i = 1; i < misses; i++) assertTrue(ping(sample(12 * i, 12 * i + 12, 19), 20).contains(100));
+        assertFalse(ping(sample(0, 12, 19), 20).contains(100));
+    }
+
+    @Test
+    public void dropsWhatIsNotSampledAgainAfterAGap(){
+        ping(sample(0, 12, 20), 20);
+        ping(sample(12, 24, 20), 20);
+        assertEquals(20, ping(sample(4, 16, 20), 20).size()); // a regular interval drops no one
+
+        now += (RosterEstimator.GAP_FACTOR + 1) * INTERVAL; // ie the breaker was open
+        PlayerSet afterGap = ping(sample(0, 12, 20), 20);
+        assertTrue(afterGap.hasSamePlayers(sample(0, 12, 20)));
+        assertEquals(0.6, roster.getCompleteness(), 1e-9);
+
+        assertEquals(20, ping(sample(12, 24, 20), 20).size()); // and converges anew
+    }
+
+    @Test
+    public void dropsTheStalestPastTheOvershoot(){
+        ping(sample(0, 12, 20), 20);
+        ping(sample(12, 24, 20), 20);
+        PlayerSet shrunk = ping(sample(0, 2, 20), 4); // 18 left at once
+        assertEquals(4 + 4 * RosterEstimator.OVERSHOOT_PERCENT / 100, shrunk.size());
+        assertTrue(shrunk.contains(1) && shrunk.contains(2));
+    }
+
+    @Test
+    public void anEmptyServerIsComplete(){
+        assertEquals(0, ping(null, 0).size());
+        assertEquals(1, roster.getCompleteness(), 1e-9);
+    }
+}
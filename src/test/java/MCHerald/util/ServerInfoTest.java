@@ -0,0 +1,41 @@
+package MCHerald.util;
+
+import org.junit.Test;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+
+public class ServerInfoTest {
+
+    @Test
+    public void movesAFrequencySavedInMinutesToSeconds() throws Exception {
+        ServerInfo saved = new ServerInfo.ServerDummy(); // like a config saved before the move, frequency in minutes
+        saved.setHost("localhost");
+        saved.setFrequency(30);
+
+        ServerInfo loaded = roundTrip(saved);
+        assertEquals(30 * 60, loaded.getFrequency());
+        assertNotNull(loaded.getBreaker());
+        assertEquals(30 * 60, roundTrip(loaded).getFrequency()); // only once
+    }
+
+    @Test
+    public void clampsTheFrequency(){
+        ServerInfo server = new ServerInfo.ServerDummy();
+        server.setFrequency(1);
+        assertEquals(Constants.MIN_FREQUENCY, server.getFrequency());
+        server.setFrequency(Integer.MAX_VALUE);
+        assertEquals(Constants.MAX_FREQUENCY, server.getFrequency());
+    }
+
+    private static ServerInfo roundTrip(ServerInfo server) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(server);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (ServerInfo) in.readObject();
+        }
+    }
+}